@@ -0,0 +1,428 @@
+package com.waez.jsondiff.config;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tunable settings of the application, bound from the "jsondiff" prefix of
+ * application.properties. Every setting has a default value, so the
+ * application works even if none of them are provided.
+ * 
+ * @author Damian
+ */
+@Component
+@ConfigurationProperties(prefix = "jsondiff")
+public class DiffProperties {
+
+    private final Diff diff = new Diff();
+    private final Store store = new Store();
+    private final Cache cache = new Cache();
+    private final Reaper reaper = new Reaper();
+
+    public Diff getDiff() {
+        return diff;
+    }
+
+    public Store getStore() {
+        return store;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Reaper getReaper() {
+        return reaper;
+    }
+
+    /**
+     * Settings about how the parts are read when performing the difference.
+     */
+    public static class Diff {
+        /**
+         * Size of the buffers used to read the parts when they are not mapped.
+         */
+        private int bufferSize = 64 * 1024;
+
+        /**
+         * Parts with at least this amount of bytes are memory mapped instead
+         * of read through buffers.
+         */
+        private long mmapThreshold = 64L * 1024 * 1024;
+
+        /**
+         * Maximum amount of bytes mapped at once for each part.
+         */
+        private int mmapWindowSize = 256 * 1024 * 1024;
+
+        /**
+         * Parts with at least this amount of bytes are compared in parallel.
+         */
+        private long parallelThreshold = 256L * 1024 * 1024;
+
+        /**
+         * Amount of bytes of each chunk compared in parallel.
+         */
+        private int parallelChunkSize = 16 * 1024 * 1024;
+
+        /**
+         * Amount of threads used to compare the chunks in parallel.
+         */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Size of the blocks hashed when the parts are uploaded, so only the
+         * blocks that differ are read when comparing them.
+         */
+        private int blockSize = 64 * 1024;
+
+        /**
+         * Maximum share of different blocks, from 0 to 1, for only those
+         * blocks to be compared. Parts where more blocks differ are compared
+         * whole, mapped or in parallel depending on their size.
+         */
+        private double maxDifferentBlockRatio = 0.25;
+
+        /**
+         * Maximum amount of differences kept among all the memoized results.
+         */
+        private long resultCacheMaxWeight = 1000000;
+
+        /**
+         * Maximum amount of bytes compared while looking for the edits between
+         * parts of different size, after which the regions not solved yet are
+         * reported as single replacements.
+         */
+        private long maxEditCost = 100_000_000L;
+
+        /**
+         * Size of the blocks of the left part indexed to find the content
+         * shifted or moved in the right one, which is also the shortest copy
+         * found.
+         */
+        private int shiftBlockSize = 512;
+
+        /**
+         * Maximum length of the JSON text of the values reported when the
+         * parts are compared as JSON, longer ones are cut.
+         */
+        private int maxValueLength = 1024;
+
+        /**
+         * Maximum amount of objects and arrays nested inside each other when
+         * the parts are compared as JSON, deeper documents are rejected.
+         */
+        private int maxDepth = 256;
+
+        /**
+         * Maximum amount of members of an object kept at once while matching
+         * them by name when the parts are compared as JSON, wider objects are
+         * matched in several passes.
+         */
+        private int maxMatchedMembers = 10000;
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public long getMmapThreshold() {
+            return mmapThreshold;
+        }
+
+        public void setMmapThreshold(long mmapThreshold) {
+            this.mmapThreshold = mmapThreshold;
+        }
+
+        public int getMmapWindowSize() {
+            return mmapWindowSize;
+        }
+
+        public void setMmapWindowSize(int mmapWindowSize) {
+            this.mmapWindowSize = mmapWindowSize;
+        }
+
+        public long getParallelThreshold() {
+            return parallelThreshold;
+        }
+
+        public void setParallelThreshold(long parallelThreshold) {
+            this.parallelThreshold = parallelThreshold;
+        }
+
+        public int getParallelChunkSize() {
+            return parallelChunkSize;
+        }
+
+        public void setParallelChunkSize(int parallelChunkSize) {
+            this.parallelChunkSize = parallelChunkSize;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        public void setBlockSize(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        public double getMaxDifferentBlockRatio() {
+            return maxDifferentBlockRatio;
+        }
+
+        public void setMaxDifferentBlockRatio(double maxDifferentBlockRatio) {
+            this.maxDifferentBlockRatio = maxDifferentBlockRatio;
+        }
+
+        public long getResultCacheMaxWeight() {
+            return resultCacheMaxWeight;
+        }
+
+        public void setResultCacheMaxWeight(long resultCacheMaxWeight) {
+            this.resultCacheMaxWeight = resultCacheMaxWeight;
+        }
+
+        public long getMaxEditCost() {
+            return maxEditCost;
+        }
+
+        public void setMaxEditCost(long maxEditCost) {
+            this.maxEditCost = maxEditCost;
+        }
+
+        public int getShiftBlockSize() {
+            return shiftBlockSize;
+        }
+
+        public void setShiftBlockSize(int shiftBlockSize) {
+            this.shiftBlockSize = shiftBlockSize;
+        }
+
+        public int getMaxValueLength() {
+            return maxValueLength;
+        }
+
+        public void setMaxValueLength(int maxValueLength) {
+            this.maxValueLength = maxValueLength;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public void setMaxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        public int getMaxMatchedMembers() {
+            return maxMatchedMembers;
+        }
+
+        public void setMaxMatchedMembers(int maxMatchedMembers) {
+            this.maxMatchedMembers = maxMatchedMembers;
+        }
+    }
+
+    /**
+     * Settings about where the parts are kept, chosen by their size.
+     */
+    public static class Store {
+        /**
+         * Parts up to this amount of bytes are kept in the heap.
+         */
+        private int heapMaxSize = 64 * 1024;
+
+        /**
+         * Parts up to this amount of bytes are kept off the heap, the bigger
+         * ones are kept in files.
+         */
+        private int offHeapMaxSize = 16 * 1024 * 1024;
+
+        /**
+         * Maximum amount of bytes among all the parts kept off the heap, the
+         * parts that don't fit anymore are kept in files.
+         */
+        private long offHeapBudget = 256 * 1024 * 1024;
+
+        /**
+         * Directory where the files of the biggest parts are kept.
+         */
+        private String directory = FileUtils.getTempDirectoryPath();
+
+        /**
+         * Keeps every part in a file of the data directory, along with an
+         * index of them, so the diffs survive a restart.
+         */
+        private boolean durable;
+
+        /**
+         * Directory of the parts and their index when they are durable.
+         */
+        private String dataDirectory = "data";
+
+        public int getHeapMaxSize() {
+            return heapMaxSize;
+        }
+
+        public void setHeapMaxSize(int heapMaxSize) {
+            this.heapMaxSize = heapMaxSize;
+        }
+
+        public int getOffHeapMaxSize() {
+            return offHeapMaxSize;
+        }
+
+        public void setOffHeapMaxSize(int offHeapMaxSize) {
+            this.offHeapMaxSize = offHeapMaxSize;
+        }
+
+        public long getOffHeapBudget() {
+            return offHeapBudget;
+        }
+
+        public void setOffHeapBudget(long offHeapBudget) {
+            this.offHeapBudget = offHeapBudget;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public boolean isDurable() {
+            return durable;
+        }
+
+        public void setDurable(boolean durable) {
+            this.durable = durable;
+        }
+
+        public String getDataDirectory() {
+            return dataDirectory;
+        }
+
+        public void setDataDirectory(String dataDirectory) {
+            this.dataDirectory = dataDirectory;
+        }
+    }
+
+    /**
+     * Settings about how long and how many diffs are kept.
+     */
+    public static class Cache {
+        /**
+         * Maximum amount of bytes among the parts of all the diffs kept, the
+         * least recently used ones are evicted beyond it.
+         */
+        private long maxWeight = 1024L * 1024 * 1024;
+
+        /**
+         * Seconds a diff is kept since it was last uploaded or read.
+         */
+        private long expireAfterAccess = 5 * 60;
+
+        /**
+         * Seconds a diff is kept since its last upload, even if it is still
+         * being read.
+         */
+        private long timeToLive = 30 * 60;
+
+        /**
+         * Seconds between the clean ups of the expired diffs, which otherwise
+         * happen only when the cache is used.
+         */
+        private long cleanUpInterval = 60;
+
+        public long getMaxWeight() {
+            return maxWeight;
+        }
+
+        public void setMaxWeight(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        public long getExpireAfterAccess() {
+            return expireAfterAccess;
+        }
+
+        public void setExpireAfterAccess(long expireAfterAccess) {
+            this.expireAfterAccess = expireAfterAccess;
+        }
+
+        public long getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(long timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public long getCleanUpInterval() {
+            return cleanUpInterval;
+        }
+
+        public void setCleanUpInterval(long cleanUpInterval) {
+            this.cleanUpInterval = cleanUpInterval;
+        }
+    }
+
+    /**
+     * Settings about how the parts no longer used are released in the
+     * background.
+     */
+    public static class Reaper {
+        /**
+         * Milliseconds between the batches of parts released.
+         */
+        private long interval = 200;
+
+        /**
+         * Maximum amount of parts released in each batch.
+         */
+        private int batchSize = 256;
+
+        /**
+         * Times the release of a part is tried before giving up.
+         */
+        private int maxAttempts = 3;
+
+        public long getInterval() {
+            return interval;
+        }
+
+        public void setInterval(long interval) {
+            this.interval = interval;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+    }
+}
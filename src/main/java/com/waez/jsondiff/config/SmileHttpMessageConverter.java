@@ -0,0 +1,26 @@
+package com.waez.jsondiff.config;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Converter that reads and writes Smile, the binary JSON format of Jackson, so
+ * the responses can be written in that format when clients accept it. </br>
+ * Smile keeps the same structure than JSON, but property names repeated in
+ * every element, like the ones of the differences, are written just once and
+ * referenced back later.
+ * 
+ * @author Damian
+ */
+@Component
+public class SmileHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public SmileHttpMessageConverter() {
+        super(new ObjectMapper(new SmileFactory()), MediaType.valueOf(APPLICATION_SMILE_VALUE));
+    }
+}
@@ -1,8 +1,8 @@
 package com.waez.jsondiff.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.nio.file.Path;
 import java.util.Optional;
 
 import org.slf4j.Logger;
@@ -12,15 +12,22 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waez.jsondiff.config.SmileHttpMessageConverter;
 import com.waez.jsondiff.model.DiffObject;
+import com.waez.jsondiff.model.DiffQuery;
 import com.waez.jsondiff.service.DiffService;
+import com.waez.jsondiff.store.Part;
 
 import dto.DiffResponseDTO;
+import dto.DiffSummaryDTO;
 
 /**
  * Main controller that expose the different resources to perform data
@@ -28,9 +35,28 @@ import dto.DiffResponseDTO;
  * <ul>
  * <li>"/v1/diff/{id}/left", in order to add data to "left side".</li>
  * <li>"/v1/diff/{id}/right", in order to add data to "right side".</li>
+ * <li>PUT "/v1/diff/{id}/left" and "/v1/diff/{id}/right", in order to add raw
+ * binary data to any of the sides, without JSON nor base64 encoding.</li>
  * <li>"/v1/diff/{id}/", return the differences between "right and left side",
  * or a message if some of the parts are missing.</li>
+ * <li>"/v1/diff/{id}/?fromLine=&toLine=&limit=&cursor=", same as above, but
+ * returning just a page of the differences.</li>
+ * <li>"/v1/diff/{id}/?maxDifferences=", same as above, but returning up to the
+ * given amount of differences.</li>
+ * <li>"/v1/diff/{id}/summary", return if "right and left side" are equal, and
+ * where the first difference is if they are not.</li>
+ * <li>"/v1/diff/{id}/?stream=true", same as above, but writing the differences
+ * while they are found.</li>
+ * <li>"/v1/diff/{id}/?mode=shifted", return the "right side" as copies of
+ * regions of the "left side" and inserted bytes.</li>
+ * <li>"/v1/diff/{id}/?mode=structural", return the values added, removed or
+ * changed between "right and left side", compared as JSON.</li>
+ * <li>"/v1/diff/{id}/?mode=structural&unordered=true&arrayKey=", same as
+ * above, but matching the elements of the arrays regardless of their
+ * order.</li>
  * </ul>
+ * Differences are answered as JSON, or as Smile, the binary JSON format of
+ * Jackson, when the request accepts "application/x-jackson-smile".
  * 
  * @author Damian
  */
@@ -38,6 +64,7 @@ import dto.DiffResponseDTO;
 @RequestMapping(value = "/v1/diff")
 public class JsonDiffController {
     private static final Logger LOGGER = LoggerFactory.getLogger(JsonDiffController.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
     @Autowired
     private DiffService diffService;
@@ -47,15 +74,15 @@ public class JsonDiffController {
      * given data and id.
      * 
      * @param data
-     *            a JSON base64 encoded binary.
+     *            a stream with the JSON holding the base64 encoded binary.
      * @param id
      *            the provided id to associate with this data.
      * @return a plain text response saying if the operation was successful or
      *         not.
      */
     @RequestMapping(value = "/{id}/left", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_HTML_VALUE)
-    public ResponseEntity<String> leftDiff(@RequestBody String data, @PathVariable Long id) {
-        return saveData(data, id, true);
+    public ResponseEntity<String> leftDiff(InputStream data, @PathVariable Long id) {
+        return saveData(data, id, true, false);
     }
 
     /**
@@ -63,15 +90,47 @@ public class JsonDiffController {
      * given data and id.
      * 
      * @param data
-     *            a JSON base64 encoded binary.
+     *            a stream with the JSON holding the base64 encoded binary.
      * @param id
      *            the provided id to associate with this data.
      * @return a plain text response saying if the operation was successful or
      *         not.
      */
     @RequestMapping(value = "/{id}/right", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_HTML_VALUE)
-    public ResponseEntity<String> rightDiff(@RequestBody String data, @PathVariable Long id) {
-        return saveData(data, id, false);
+    public ResponseEntity<String> rightDiff(InputStream data, @PathVariable Long id) {
+        return saveData(data, id, false, false);
+    }
+
+    /**
+     * Enpoint that adds raw binary information for comparison at the "left
+     * side" with the given id.
+     * 
+     * @param data
+     *            a stream with the raw bytes to compare.
+     * @param id
+     *            the provided id to associate with this data.
+     * @return a plain text response saying if the operation was successful or
+     *         not.
+     */
+    @RequestMapping(value = "/{id}/left", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE, produces = MediaType.TEXT_HTML_VALUE)
+    public ResponseEntity<String> leftRawDiff(InputStream data, @PathVariable Long id) {
+        return saveData(data, id, true, true);
+    }
+
+    /**
+     * Enpoint that adds raw binary information for comparison at the "right
+     * side" with the given id.
+     * 
+     * @param data
+     *            a stream with the raw bytes to compare.
+     * @param id
+     *            the provided id to associate with this data.
+     * @return a plain text response saying if the operation was successful or
+     *         not.
+     */
+    @RequestMapping(value = "/{id}/right", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE, produces = MediaType.TEXT_HTML_VALUE)
+    public ResponseEntity<String> rightRawDiff(InputStream data, @PathVariable Long id) {
+        return saveData(data, id, false, true);
     }
 
     /**
@@ -80,30 +139,60 @@ public class JsonDiffController {
      * another message saying that the size of data is different so not
      * comparable. </br>
      * This endpoint answers with a JSON response, listing all the lines where
-     * differences happened, with the offset and the length of difference
+     * differences happened, with the offset and the length of difference.
+     * </br>
+     * The differences can be asked a page at a time, giving the range of lines
+     * and the maximum amount of them. When there are more differences than the
+     * limit, the response has a "nextCursor" to ask for the next page, and it
+     * is marked as truncated. </br>
+     * Clients that accept Smile get the same response in that format, which
+     * is smaller and cheaper to encode and decode than JSON.
      * 
      * @param id
      *            the id to use to perform the difference.
+     * @param fromLine
+     *            the first line to return differences of, optional.
+     * @param toLine
+     *            the last line to return differences of, optional.
+     * @param limit
+     *            the maximum amount of differences to return, optional.
+     * @param cursor
+     *            the "nextCursor" of the previous page, optional.
+     * @param maxDifferences
+     *            the maximum amount of differences to return, optional, like
+     *            limit.
      * @return a JSON response, listing all the lines where differences
      *         happened, with the offset and the length of difference
      */
-    @RequestMapping(value = "/{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity<DiffResponseDTO> getDiff(@PathVariable Long id) {
+    @RequestMapping(value = "/{id}", method = RequestMethod.GET, produces = { MediaType.APPLICATION_JSON_UTF8_VALUE,
+            SmileHttpMessageConverter.APPLICATION_SMILE_VALUE })
+    public ResponseEntity<DiffResponseDTO> getDiff(@PathVariable Long id,
+            @RequestParam(required = false) Long fromLine, @RequestParam(required = false) Long toLine,
+            @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer maxDifferences) {
         LOGGER.info("Get diff incoming request with id: '{}'", id);
 
+        DiffQuery query;
+
+        try {
+            query = DiffQuery.of(fromLine, toLine, min(limit, maxDifferences), cursor);
+        } catch (IllegalArgumentException iae) {
+            return ResponseEntity.badRequest().body(new DiffResponseDTO(iae.getMessage()));
+        }
+
         DiffObject diffObject = diffService.getDiffById(id);
 
         if (diffObject == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(new DiffResponseDTO("Nothign to compare with id: " + id + ", it may be expired already"));
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new DiffResponseDTO(notFoundMessage(id)));
         }
 
-        Optional<Path> leftPart = diffObject.getLeftPart();
-        Optional<Path> rightPart = diffObject.getRightPart();
+        Optional<Part> leftPart = diffObject.getLeftPart();
+        Optional<Part> rightPart = diffObject.getRightPart();
 
         if (leftPart.isPresent() && rightPart.isPresent()) {
             try {
-                DiffResponseDTO diffResponse = diffService.makeDiff(diffObject);
+                DiffResponseDTO diffResponse = query.isAll() ? diffService.makeDiff(diffObject)
+                        : diffService.makeDiff(diffObject, query);
 
                 return ResponseEntity.ok().body(diffResponse);
             } catch (IOException e) {
@@ -112,18 +201,193 @@ public class JsonDiffController {
             }
         }
 
-        return ResponseEntity.badRequest()
-                .body(new DiffResponseDTO("One of the parts to compare with are missing with id: " + id));
+        return ResponseEntity.badRequest().body(new DiffResponseDTO(missingPartMessage(id)));
+    }
+
+    /**
+     * Return if what was loaded at the "left and right side" is equal, and if
+     * it is not, the line, offset and length of the first difference. </br>
+     * The difference stops as soon as the first difference is found, so it is
+     * much cheaper than asking for all of them.
+     * 
+     * @param id
+     *            the id to use to perform the difference.
+     * @return a JSON response, saying if both sides are equal, and where the
+     *         first difference is.
+     */
+    @RequestMapping(value = "/{id}/summary", method = RequestMethod.GET, produces = {
+            MediaType.APPLICATION_JSON_UTF8_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE })
+    public ResponseEntity<DiffSummaryDTO> getSummary(@PathVariable Long id) {
+        LOGGER.info("Get summary incoming request with id: '{}'", id);
+
+        DiffObject diffObject = diffService.getDiffById(id);
+
+        if (diffObject == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new DiffSummaryDTO(notFoundMessage(id)));
+        }
+
+        if (diffObject.getLeftPart().isPresent() && diffObject.getRightPart().isPresent()) {
+            try {
+                return ResponseEntity.ok().body(diffService.summarize(diffObject));
+            } catch (IOException e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(new DiffSummaryDTO("Could not read file content for id: " + id));
+            }
+        }
+
+        return ResponseEntity.badRequest().body(new DiffSummaryDTO(missingPartMessage(id)));
+    }
+
+    /**
+     * Return the "right side" as copies of regions of the "left side" and
+     * inserted bytes, so content that was shifted or moved, even by a single
+     * inserted byte, is not reported as different. </br>
+     * Both sides can have any size.
+     * 
+     * @param id
+     *            the id to use to perform the difference.
+     * @return a JSON response, listing the copies and insertions that build
+     *         the "right side".
+     */
+    @RequestMapping(value = "/{id}", method = RequestMethod.GET, params = "mode=shifted", produces = {
+            MediaType.APPLICATION_JSON_UTF8_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE })
+    public ResponseEntity<DiffResponseDTO> getShiftedDiff(@PathVariable Long id) {
+        LOGGER.info("Get shifted diff incoming request with id: '{}'", id);
+
+        DiffObject diffObject = diffService.getDiffById(id);
+
+        if (diffObject == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new DiffResponseDTO(notFoundMessage(id)));
+        }
+
+        if (diffObject.getLeftPart().isPresent() && diffObject.getRightPart().isPresent()) {
+            try {
+                return ResponseEntity.ok().body(diffService.makeShiftedDiff(diffObject));
+            } catch (IOException e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(new DiffResponseDTO("Could not read file content for id: " + id));
+            }
+        }
+
+        return ResponseEntity.badRequest().body(new DiffResponseDTO(missingPartMessage(id)));
+    }
+
+    /**
+     * Return the values added, removed or changed between what was loaded at
+     * the "left and right side", compared as JSON documents, by their JSON
+     * Pointer. </br>
+     * Reordered keys and reformatting are not differences, and neither are
+     * reordered array elements when they are matched regardless of their
+     * order.
+     * 
+     * @param id
+     *            the id to use to perform the difference.
+     * @param unordered
+     *            if the elements of the arrays are matched regardless of
+     *            their order, by their hash.
+     * @param arrayKey
+     *            the JSON Pointer, inside each element of the arrays, of the
+     *            value the elements are matched by, regardless of their
+     *            order.
+     * @return a JSON response, listing the path, and the old and new values,
+     *         of every change.
+     */
+    @RequestMapping(value = "/{id}", method = RequestMethod.GET, params = "mode=structural", produces = {
+            MediaType.APPLICATION_JSON_UTF8_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE })
+    public ResponseEntity<DiffResponseDTO> getStructuralDiff(@PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean unordered, @RequestParam(required = false) String arrayKey) {
+        LOGGER.info("Get structural diff incoming request with id: '{}'", id);
+
+        DiffObject diffObject = diffService.getDiffById(id);
+
+        if (diffObject == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new DiffResponseDTO(notFoundMessage(id)));
+        }
+
+        if (diffObject.getLeftPart().isPresent() && diffObject.getRightPart().isPresent()) {
+            try {
+                return ResponseEntity.ok().body(diffService.makeStructuralDiff(diffObject, unordered, arrayKey));
+            } catch (IllegalArgumentException iae) {
+                return ResponseEntity.badRequest().body(new DiffResponseDTO(iae.getMessage()));
+            } catch (JsonProcessingException e) {
+                return ResponseEntity.badRequest().body(
+                        new DiffResponseDTO("Data is NOT valid JSON for id: " + id + ", " + e.getOriginalMessage()));
+            } catch (IOException e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(new DiffResponseDTO("Could not read file content for id: " + id));
+            }
+        }
+
+        return ResponseEntity.badRequest().body(new DiffResponseDTO(missingPartMessage(id)));
+    }
+
+    /**
+     * Same as {@link #getDiff(Long, Long, Long, Integer, String, Integer)}, but
+     * the differences are written to the response as soon as they are found,
+     * so the memory used doesn't depend on how many differences there are.
+     * </br>
+     * Given the response starts before the difference is done, an error while
+     * reading the files can only be noticed by a truncated JSON.
+     * 
+     * @param id
+     *            the id to use to perform the difference.
+     * @return a JSON response, listing all the lines where differences
+     *         happened, with the offset and the length of difference
+     */
+    @RequestMapping(value = "/{id}", method = RequestMethod.GET, params = "stream=true", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamDiff(@PathVariable Long id) {
+        LOGGER.info("Stream diff incoming request with id: '{}'", id);
+
+        DiffObject diffObject = diffService.getDiffById(id);
+
+        if (diffObject == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(write(new DiffResponseDTO(notFoundMessage(id))));
+        }
+
+        if (diffObject.getLeftPart().isPresent() && diffObject.getRightPart().isPresent()) {
+            return ResponseEntity.ok().body(out -> {
+                try {
+                    diffService.streamDiff(diffObject, out);
+                } catch (IOException ioe) {
+                    LOGGER.error("Error while streaming the diff for id: '{}', ex: ", id, ioe);
+
+                    throw ioe;
+                }
+            });
+        }
+
+        return ResponseEntity.badRequest().body(write(new DiffResponseDTO(missingPartMessage(id))));
+    }
+
+    private static StreamingResponseBody write(DiffResponseDTO response) {
+        return out -> MAPPER.writeValue(out, response);
+    }
+
+    private static Integer min(Integer limit, Integer maxDifferences) {
+        if (limit == null || maxDifferences == null) {
+            return limit == null ? maxDifferences : limit;
+        }
+
+        return Math.min(limit, maxDifferences);
+    }
+
+    private static String notFoundMessage(Long id) {
+        return "Nothign to compare with id: " + id + ", it may be expired already";
+    }
+
+    private static String missingPartMessage(Long id) {
+        return "One of the parts to compare with are missing with id: " + id;
     }
 
-    private ResponseEntity<String> saveData(String data, Long id, boolean leftPart) {
+    private ResponseEntity<String> saveData(InputStream data, Long id, boolean leftPart, boolean raw) {
         LOGGER.info("Incoming request with id: '{}' for {} side", id, leftPart ? "left" : "right");
 
         Optional<DiffObject> diffOptionalObject = Optional
                 .of(Optional.ofNullable(diffService.getDiffById(id)).orElse(new DiffObject(id)));
 
         try {
-            URI uri = diffService.addNewDiff(diffOptionalObject.get(), data, leftPart);
+            URI uri = raw ? diffService.addNewRawDiff(diffOptionalObject.get(), data, leftPart)
+                    : diffService.addNewDiff(diffOptionalObject.get(), data, leftPart);
 
             return ResponseEntity.created(uri).body("Part of comparision added with id: " + id + " at: " + uri);
         } catch (IOException ioe) {
@@ -0,0 +1,218 @@
+package com.waez.jsondiff.engine;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Tree of hashes of the fixed size blocks a part is made of, where every node
+ * hashes its two children, so the blocks that differ between two parts of the
+ * same length can be found by walking only the branches whose hashes differ.
+ * <br/>
+ * Besides the hashes, it keeps where the lines are at the beginning of every
+ * block, so a scan can start at any block keeping the same line and offset
+ * coordinates than a scan from the beginning.
+ * 
+ * @author Damian
+ */
+public class BlockIndex {
+    static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final int blockSize;
+    private final long length;
+    private final long[] linesBefore;
+    private final long[] lineStarts;
+
+    /**
+     * Hashes of every level of the tree, with the leaves first and the root
+     * last. Each hash takes two consecutive longs.
+     */
+    private final long[][] levels;
+
+    BlockIndex(final int blockSize, final long length, final long[] leaves, final long[] linesBefore,
+            final long[] lineStarts) {
+        this.blockSize = blockSize;
+        this.length = length;
+        this.linesBefore = linesBefore;
+        this.lineStarts = lineStarts;
+        this.levels = buildLevels(leaves);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public int getBlocks() {
+        return linesBefore.length;
+    }
+
+    /**
+     * @return the amount of lines completed before the given block starts.
+     */
+    public long getLinesBefore(final int block) {
+        return linesBefore[block];
+    }
+
+    /**
+     * @return the absolute position where the line that is in progress when
+     *         the given block starts begins.
+     */
+    public long getLineStart(final int block) {
+        return lineStarts[block];
+    }
+
+    /**
+     * Finds the block where the given line starts, so a scan that starts
+     * there doesn't miss any byte of it.
+     * 
+     * @param line
+     *            the line to look for.
+     * @return the first block holding bytes of the line, or the last block
+     *         if the part has less lines.
+     */
+    public int firstBlockOf(final long line) {
+        int block = firstBlockAfter(line, false);
+
+        if (block < getBlocks() && linesBefore[block] == line && lineStarts[block] == (long) block * blockSize) {
+            return block;
+        }
+
+        return Math.max(block - 1, 0);
+    }
+
+    /**
+     * Finds the first block that starts after the given line is over, so a
+     * scan that stops there doesn't miss any byte of it.
+     * 
+     * @param line
+     *            the last line to look for.
+     * @return the first block without bytes of the line nor of any previous
+     *         one, or the amount of blocks if there is none.
+     */
+    public int endBlockOf(final long line) {
+        return firstBlockAfter(line, true);
+    }
+
+    /**
+     * Tells if this index can be compared with the one of another part.
+     * 
+     * @param other
+     *            the index of the other part.
+     * @return true if both parts have the same length and block size.
+     */
+    public boolean isComparableWith(final BlockIndex other) {
+        return blockSize == other.blockSize && length == other.length;
+    }
+
+    /**
+     * Finds the blocks whose content differ between both parts.
+     * 
+     * @param other
+     *            the index of the other part, which must be comparable with
+     *            this one.
+     * @return the set of blocks with different hashes.
+     */
+    public BitSet differentBlocks(final BlockIndex other) {
+        BitSet different = new BitSet(getBlocks());
+
+        if (getBlocks() > 0) {
+            collectDifferentBlocks(other, levels.length - 1, 0, different);
+        }
+
+        return different;
+    }
+
+    private void collectDifferentBlocks(final BlockIndex other, final int level, final int node,
+            final BitSet different) {
+        long[] hashes = levels[level];
+        long[] otherHashes = other.levels[level];
+
+        if (hashes[2 * node] == otherHashes[2 * node] && hashes[2 * node + 1] == otherHashes[2 * node + 1]) {
+            return;
+        }
+
+        if (level == 0) {
+            different.set(node);
+            return;
+        }
+
+        int children = levels[level - 1].length / 2;
+
+        collectDifferentBlocks(other, level - 1, 2 * node, different);
+
+        if (2 * node + 1 < children) {
+            collectDifferentBlocks(other, level - 1, 2 * node + 1, different);
+        }
+    }
+
+    /**
+     * Binary search of the first block whose lines before are greater, or
+     * greater or equal when not inclusive, than the given line.
+     */
+    private int firstBlockAfter(final long line, final boolean inclusive) {
+        int low = 0;
+        int high = getBlocks();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (linesBefore[middle] < line || inclusive && linesBefore[middle] == line) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static long[][] buildLevels(final long[] leaves) {
+        int depth = 1;
+
+        for (int nodes = leaves.length / 2; nodes > 1; nodes = (nodes + 1) / 2) {
+            depth++;
+        }
+
+        long[][] levels = new long[depth][];
+        levels[0] = leaves;
+
+        for (int level = 1; level < depth; level++) {
+            long[] children = levels[level - 1];
+            int childNodes = children.length / 2;
+            long[] parents = new long[2 * ((childNodes + 1) / 2)];
+
+            for (int child = 0; child < childNodes; child += 2) {
+                Hasher hasher = HASH_FUNCTION.newHasher().putLong(children[2 * child])
+                        .putLong(children[2 * child + 1]);
+
+                if (child + 1 < childNodes) {
+                    hasher.putLong(children[2 * child + 2]).putLong(children[2 * child + 3]);
+                }
+
+                setHash(parents, child / 2, hasher.hash());
+            }
+
+            levels[level] = parents;
+        }
+
+        return levels;
+    }
+
+    /**
+     * Stores the 128 bits hash as the two longs of the given node.
+     */
+    static void setHash(final long[] hashes, final int node, final HashCode hash) {
+        ByteBuffer bytes = ByteBuffer.wrap(hash.asBytes());
+
+        hashes[2 * node] = bytes.getLong();
+        hashes[2 * node + 1] = bytes.getLong();
+    }
+}
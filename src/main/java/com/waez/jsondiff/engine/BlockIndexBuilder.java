@@ -0,0 +1,106 @@
+package com.waez.jsondiff.engine;
+
+import java.util.Arrays;
+
+import com.google.common.hash.Hasher;
+
+/**
+ * Builds the {@link BlockIndex} of a part while its bytes are written, so the
+ * part never needs to be read again to be indexed.
+ * 
+ * @author Damian
+ */
+public class BlockIndexBuilder {
+    private static final byte NEW_LINE = '\n';
+
+    private final int blockSize;
+
+    private long[] leaves = new long[32];
+    private long[] linesBefore = new long[16];
+    private long[] lineStarts = new long[16];
+    private int blocks;
+
+    private Hasher hasher;
+    private int blockFill;
+    private long length;
+    private long lines;
+    private long lineStart;
+
+    public BlockIndexBuilder(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Adds the next bytes of the part to the index.
+     * 
+     * @param bytes
+     *            an array holding the bytes.
+     * @param offset
+     *            where the bytes start in the array.
+     * @param count
+     *            the amount of bytes to add.
+     */
+    public void update(final byte[] bytes, final int offset, final int count) {
+        int i = offset;
+        int end = offset + count;
+
+        while (i < end) {
+            if (hasher == null) {
+                startBlock();
+            }
+
+            int chunkEnd = Math.min(end, i + blockSize - blockFill);
+
+            hasher.putBytes(bytes, i, chunkEnd - i);
+
+            for (int j = i; j < chunkEnd; j++) {
+                if (bytes[j] == NEW_LINE) {
+                    lines++;
+                    lineStart = length + j - i + 1;
+                }
+            }
+
+            length += chunkEnd - i;
+            blockFill += chunkEnd - i;
+
+            if (blockFill == blockSize) {
+                finishBlock();
+            }
+
+            i = chunkEnd;
+        }
+    }
+
+    /**
+     * @return the index of all the bytes added so far.
+     */
+    public BlockIndex build() {
+        if (hasher != null) {
+            finishBlock();
+        }
+
+        return new BlockIndex(blockSize, length, Arrays.copyOf(leaves, 2 * blocks),
+                Arrays.copyOf(linesBefore, blocks), Arrays.copyOf(lineStarts, blocks));
+    }
+
+    private void startBlock() {
+        if (blocks == linesBefore.length) {
+            leaves = Arrays.copyOf(leaves, leaves.length * 2);
+            linesBefore = Arrays.copyOf(linesBefore, linesBefore.length * 2);
+            lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+        }
+
+        linesBefore[blocks] = lines;
+        lineStarts[blocks] = lineStart;
+
+        hasher = BlockIndex.HASH_FUNCTION.newHasher();
+        blockFill = 0;
+    }
+
+    private void finishBlock() {
+        BlockIndex.setHash(leaves, blocks, hasher.hash());
+
+        blocks++;
+        hasher = null;
+    }
+}
@@ -0,0 +1,99 @@
+package com.waez.jsondiff.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Engine that uses the {@link BlockIndex} of both parts to read and compare
+ * only the blocks whose hashes differ, skipping the rest of them without
+ * reading a single byte. <br/>
+ * It can also be restricted to a range of lines, seeking straight to the
+ * blocks that hold them by the line positions kept in the index.
+ * 
+ * @author Damian
+ */
+public class BlockIndexDiffEngine implements DiffEngine {
+    private final BlockIndex leftIndex;
+    private final BlockIndex rightIndex;
+    private final int bufferSize;
+    private final int fromBlock;
+    private final int toBlock;
+
+    /**
+     * Creates an engine for the parts described by the given indexes.
+     * 
+     * @param leftIndex
+     *            the index of the left part.
+     * @param rightIndex
+     *            the index of the right part, comparable with the left one.
+     * @param bufferSize
+     *            the size of the buffers used to read the different blocks.
+     */
+    public BlockIndexDiffEngine(final BlockIndex leftIndex, final BlockIndex rightIndex, final int bufferSize) {
+        this(leftIndex, rightIndex, bufferSize, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates an engine that only compares the blocks holding the given range
+     * of lines of the left part. Differences of the lines around the range
+     * that share those blocks may be reported too.
+     * 
+     * @param leftIndex
+     *            the index of the left part.
+     * @param rightIndex
+     *            the index of the right part, comparable with the left one.
+     * @param bufferSize
+     *            the size of the buffers used to read the different blocks.
+     * @param fromLine
+     *            the first line to compare.
+     * @param toLine
+     *            the last line to compare, included.
+     */
+    public BlockIndexDiffEngine(final BlockIndex leftIndex, final BlockIndex rightIndex, final int bufferSize,
+            final long fromLine, final long toLine) {
+        this.leftIndex = leftIndex;
+        this.rightIndex = rightIndex;
+        this.bufferSize = bufferSize;
+        this.fromBlock = leftIndex.firstBlockOf(fromLine);
+        this.toBlock = leftIndex.endBlockOf(toLine);
+    }
+
+    @Override
+    public void diff(final PartReader left, final PartReader right, final DiffListener listener)
+            throws IOException {
+        BitSet differentBlocks = leftIndex.differentBlocks(rightIndex);
+        differentBlocks.clear(toBlock, Math.max(toBlock, differentBlocks.length()));
+
+        if (differentBlocks.nextSetBit(fromBlock) < 0) {
+            return;
+        }
+
+        ByteBuffer leftBuffer = ByteBuffer.allocate(bufferSize);
+        ByteBuffer rightBuffer = ByteBuffer.allocate(bufferSize);
+
+        long blockSize = leftIndex.getBlockSize();
+        int block = differentBlocks.nextSetBit(fromBlock);
+
+        while (block >= 0) {
+            // Consecutive different blocks are scanned at once, so runs that
+            // cross their boundaries are reported as a single one.
+            int endBlock = differentBlocks.nextClearBit(block);
+
+            DiffScanner scanner = new DiffScanner(listener, block * blockSize, leftIndex.getLinesBefore(block),
+                    leftIndex.getLineStart(block));
+
+            scanner.scan(left, right, Math.min(endBlock * blockSize, leftIndex.getLength()), leftBuffer,
+                    rightBuffer);
+            scanner.finish();
+
+            if (scanner.isDone()) {
+                return;
+            }
+
+            block = differentBlocks.nextSetBit(endBlock);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.waez.jsondiff.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Engine that finds the differences between two parts of the same size,
+ * reading both of them through a pair of fixed buffers that are reused for the
+ * whole comparison, and delegating the comparison to a {@link DiffScanner}.
+ * <br/>
+ * Big parts kept in files are memory mapped instead, window by window, so the
+ * scanner works straight over the page cache without copying the bytes into
+ * the heap, and parts kept in memory are scanned right where they are.
+ * 
+ * @author Damian
+ */
+public class ByteDiffEngine implements DiffEngine {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final int bufferSize;
+    private final long mmapThreshold;
+    private final int mmapWindowSize;
+
+    public ByteDiffEngine() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteDiffEngine(final int bufferSize) {
+        this(bufferSize, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates an engine that maps the parts when they are big enough.
+     * 
+     * @param bufferSize
+     *            the size of the buffers used to read parts that are not
+     *            mapped.
+     * @param mmapThreshold
+     *            the minimum size of the parts to be mapped.
+     * @param mmapWindowSize
+     *            the maximum amount of bytes mapped at once for each part.
+     */
+    public ByteDiffEngine(final int bufferSize, final long mmapThreshold, final int mmapWindowSize) {
+        this.bufferSize = bufferSize;
+        this.mmapThreshold = mmapThreshold;
+        this.mmapWindowSize = mmapWindowSize;
+    }
+
+    @Override
+    public void diff(final PartReader left, final PartReader right, final DiffListener listener)
+            throws IOException {
+        long length = Math.min(left.size(), right.size());
+
+        if (length >= mmapThreshold) {
+            diffMapped(left, right, length, listener);
+        } else {
+            diffBuffered(left, right, length, listener);
+        }
+    }
+
+    private void diffMapped(final PartReader left, final PartReader right, final long length,
+            final DiffListener listener) throws IOException {
+        DiffScanner scanner = new DiffScanner(listener);
+
+        long position = 0;
+
+        // A single mapping can't go beyond 2 GB, so bigger parts are walked
+        // in windows. Each window is released when it gets garbage collected.
+        while (position < length && !scanner.isDone()) {
+            long window = Math.min(mmapWindowSize, length - position);
+
+            scanner.scan(left.map(position, (int) window), right.map(position, (int) window));
+
+            position += window;
+        }
+
+        scanner.finish();
+    }
+
+    private void diffBuffered(final PartReader left, final PartReader right, final long length,
+            final DiffListener listener) throws IOException {
+        DiffScanner scanner = new DiffScanner(listener);
+
+        scanner.scan(left, right, length, ByteBuffer.allocate(bufferSize), ByteBuffer.allocate(bufferSize));
+        scanner.finish();
+    }
+}
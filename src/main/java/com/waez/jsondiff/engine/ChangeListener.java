@@ -0,0 +1,27 @@
+package com.waez.jsondiff.engine;
+
+/**
+ * Callback used by the structural engine to report every change found, as
+ * soon as it is found.
+ * 
+ * @author Damian
+ */
+@FunctionalInterface
+public interface ChangeListener {
+
+    /**
+     * Notifies a value added, removed or changed.
+     * 
+     * @param type
+     *            the kind of change.
+     * @param path
+     *            the JSON Pointer of the value.
+     * @param oldValue
+     *            the JSON text of the value in the left document, or null if
+     *            it was added.
+     * @param newValue
+     *            the JSON text of the value in the right document, or null if
+     *            it was removed.
+     */
+    void onChange(ChangeType type, String path, String oldValue, String newValue);
+}
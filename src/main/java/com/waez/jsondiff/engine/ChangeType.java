@@ -0,0 +1,23 @@
+package com.waez.jsondiff.engine;
+
+/**
+ * Kinds of changes found between the values of two JSON documents.
+ * 
+ * @author Damian
+ */
+public enum ChangeType {
+    /**
+     * A value only in the right document.
+     */
+    ADDED,
+
+    /**
+     * A value only in the left document.
+     */
+    REMOVED,
+
+    /**
+     * A value in both documents, different in each of them.
+     */
+    CHANGED
+}
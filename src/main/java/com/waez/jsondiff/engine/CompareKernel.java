@@ -0,0 +1,56 @@
+package com.waez.jsondiff.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Inner loop of the {@link DiffScanner}, which skips in bulk the bytes that
+ * don't need to be looked at one by one: the equal ones outside a run of
+ * differences, and the different ones inside it. Both stop at line breaks of
+ * the left window, since runs never cross a line. <br/>
+ * The windows are read with absolute positions, so their own positions and
+ * limits are left untouched.
+ * 
+ * @author Damian
+ */
+public interface CompareKernel {
+
+    /**
+     * Finds the first byte of the left window that is different from the
+     * byte of the right window at the same place, or that is a '\n'.
+     * 
+     * @param left
+     *            the left window.
+     * @param right
+     *            the right window.
+     * @param from
+     *            the position of the left window to start at.
+     * @param to
+     *            the position of the left window to stop at.
+     * @param shift
+     *            the distance from the positions of the left window to the
+     *            ones of the right window.
+     * @return the position of that byte in the left window, or to if there is
+     *         none.
+     */
+    int skipEqual(ByteBuffer left, ByteBuffer right, int from, int to, int shift);
+
+    /**
+     * Finds the first byte of the left window that is equal to the byte of
+     * the right window at the same place, or that is a '\n'.
+     * 
+     * @param left
+     *            the left window.
+     * @param right
+     *            the right window.
+     * @param from
+     *            the position of the left window to start at.
+     * @param to
+     *            the position of the left window to stop at.
+     * @param shift
+     *            the distance from the positions of the left window to the
+     *            ones of the right window.
+     * @return the position of that byte in the left window, or to if there is
+     *         none.
+     */
+    int skipDifferent(ByteBuffer left, ByteBuffer right, int from, int to, int shift);
+}
@@ -0,0 +1,85 @@
+package com.waez.jsondiff.engine;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the fastest {@link CompareKernel} the running JVM supports, once.
+ * <br/>
+ * The {@link VectorCompareKernel} is only built by the "vector" profile, with
+ * Java 17, and only runs when the jdk.incubator.vector module is added to the
+ * JVM, so it is loaded by name, and checked against the
+ * {@link ScalarCompareKernel} before it is trusted. When it is missing, or
+ * anything about it fails, the scalar kernel is used instead.
+ * 
+ * @author Damian
+ */
+public final class CompareKernels {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompareKernels.class);
+    private static final String VECTOR_KERNEL = "com.waez.jsondiff.engine.VectorCompareKernel";
+    private static final CompareKernel FASTEST = load();
+
+    private CompareKernels() {
+    }
+
+    /**
+     * @return the fastest kernel available.
+     */
+    public static CompareKernel fastest() {
+        return FASTEST;
+    }
+
+    private static CompareKernel load() {
+        CompareKernel scalar = new ScalarCompareKernel();
+
+        try {
+            CompareKernel vector = (CompareKernel) Class.forName(VECTOR_KERNEL).getConstructor().newInstance();
+
+            if (agree(vector, scalar, ByteBuffer.allocate(512), ByteBuffer.allocate(512))
+                    && agree(vector, scalar, ByteBuffer.allocateDirect(512), ByteBuffer.allocateDirect(512))) {
+                LOGGER.info("Comparing parts with kernel: '{}'", vector);
+
+                return vector;
+            }
+
+            LOGGER.warn("Kernel: '{}' doesn't agree with the scalar one, ignoring it", vector);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Not built, not running on Java 17 or later, or the module was not added.
+            LOGGER.debug("Vector kernel is not available", e);
+        }
+
+        LOGGER.info("Comparing parts with kernel: '{}'", scalar);
+
+        return scalar;
+    }
+
+    /**
+     * Tells if both kernels stop at the same bytes of windows wider than any
+     * vector, with line breaks and differences inside and across lanes.
+     */
+    private static boolean agree(final CompareKernel kernel, final CompareKernel reference, final ByteBuffer left,
+            final ByteBuffer right) {
+        for (int i = 0; i < left.capacity(); i++) {
+            left.put(i, (byte) ('a' + i % 7));
+            right.put(i, i % 67 < 40 ? left.get(i) : (byte) 'z');
+        }
+
+        left.put(300, (byte) '\n');
+        right.put(300, (byte) '\n');
+
+        for (int from = 0; from < left.capacity(); from++) {
+            int to = left.capacity() - 1;
+
+            if (kernel.skipEqual(left, right, from, to, 1) != reference.skipEqual(left, right, from, to, 1)
+                    || kernel.skipEqual(left, right, from, to, 0) != reference.skipEqual(left, right, from, to, 0)
+                    || kernel.skipDifferent(left, right, from, to, 0) != reference.skipDifferent(left, right, from,
+                            to, 0)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,28 @@
+package com.waez.jsondiff.engine;
+
+import java.io.IOException;
+
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Strategy to find the differences between two parts of the same size.
+ * 
+ * @author Damian
+ */
+public interface DiffEngine {
+
+    /**
+     * Compares both parts from the beginning until the end of the shortest
+     * one, notifying every difference found to the listener in order.
+     * 
+     * @param left
+     *            the reader of the left part.
+     * @param right
+     *            the reader of the right part.
+     * @param listener
+     *            the listener to notify the differences to.
+     * @throws IOException
+     *             if any of the parts could not be read.
+     */
+    void diff(PartReader left, PartReader right, DiffListener listener) throws IOException;
+}
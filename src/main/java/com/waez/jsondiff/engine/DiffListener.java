@@ -0,0 +1,34 @@
+package com.waez.jsondiff.engine;
+
+/**
+ * Callback used by the diff engines to report every run of different bytes
+ * found, as soon as it is found.
+ * 
+ * @author Damian
+ */
+@FunctionalInterface
+public interface DiffListener {
+
+    /**
+     * Notifies a run of consecutive different bytes inside a line.
+     * 
+     * @param line
+     *            the line of the left part where the difference is, starting
+     *            at zero.
+     * @param offset
+     *            the offset of the first different byte inside the line.
+     * @param length
+     *            the amount of consecutive different bytes.
+     */
+    void onDifference(long line, long offset, long length);
+
+    /**
+     * Tells the engine that no more differences are needed, so it can stop
+     * reading the parts. It is asked after every difference notified.
+     * 
+     * @return true if the engine can stop, false by default.
+     */
+    default boolean isDone() {
+        return false;
+    }
+}
@@ -0,0 +1,202 @@
+package com.waez.jsondiff.engine;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Byte oriented comparator that walks two parts window by window, keeping the
+ * line and offset coordinates of the left part to report the runs of
+ * different bytes to a {@link DiffListener}. <br/>
+ * Lines are delimited by '\n', which belongs to the line it ends, and a run of
+ * differences never crosses a line. <br/>
+ * Equal regions, and the different bytes inside a run, are skipped in bulk by
+ * the fastest {@link CompareKernel} available, falling back to byte by byte
+ * comparison only around the edges of the runs and line breaks, so the scan
+ * doesn't allocate anything no matter how many lines the parts have. <br/>
+ * The scan stops as soon as the listener tells it is done.
+ * 
+ * @author Damian
+ */
+public class DiffScanner {
+    private static final byte NEW_LINE = '\n';
+
+    private final DiffListener listener;
+    private final CompareKernel kernel = CompareKernels.fastest();
+
+    private long position;
+    private long line;
+    private long lineStart;
+    private long runStart = -1;
+    private boolean done;
+
+    public DiffScanner(final DiffListener listener) {
+        this(listener, 0, 0, 0);
+    }
+
+    /**
+     * Creates a scanner that starts in the middle of the parts.
+     * 
+     * @param listener
+     *            the listener to notify the differences to.
+     * @param position
+     *            the absolute position of the first byte to be scanned.
+     * @param line
+     *            the line the byte at position belongs to.
+     * @param lineStart
+     *            the absolute position where that line starts.
+     */
+    public DiffScanner(final DiffListener listener, final long position, final long line, final long lineStart) {
+        this.listener = listener;
+        this.position = position;
+        this.line = line;
+        this.lineStart = lineStart;
+    }
+
+    /**
+     * Compares the remaining bytes of the left window with the same amount of
+     * bytes of the right window, consuming both of them, or just until the
+     * listener is done.
+     * 
+     * @param left
+     *            the next window of the left part.
+     * @param right
+     *            the next window of the right part, with at least as many
+     *            remaining bytes as the left one.
+     */
+    public void scan(final ByteBuffer left, final ByteBuffer right) {
+        int from = left.position();
+        int to = left.limit();
+        int shift = right.position() - from;
+        int i = from;
+
+        while (i < to && !done) {
+            i = runStart < 0 ? kernel.skipEqual(left, right, i, to, shift)
+                    : kernel.skipDifferent(left, right, i, to, shift);
+
+            if (i == to) {
+                break;
+            }
+
+            byte leftByte = left.get(i);
+            long current = position + i - from;
+
+            if (leftByte != right.get(i + shift)) {
+                if (runStart < 0) {
+                    runStart = current;
+                }
+            } else {
+                closeRun(current);
+            }
+
+            if (leftByte == NEW_LINE) {
+                closeRun(current + 1);
+
+                line++;
+                lineStart = current + 1;
+            }
+
+            i++;
+        }
+
+        position += i - from;
+
+        left.position(i);
+        right.position(i + shift);
+    }
+
+    /**
+     * Compares both parts from the current position until the given one,
+     * reading them through the given buffers, or straight from memory when
+     * both of them are already there.
+     * 
+     * @param left
+     *            the reader of the left part.
+     * @param right
+     *            the reader of the right part.
+     * @param end
+     *            the absolute position where the scan stops.
+     * @param leftBuffer
+     *            the buffer used to read the left part.
+     * @param rightBuffer
+     *            the buffer used to read the right part, with the same
+     *            capacity than the left one.
+     * @throws IOException
+     *             if any of the parts could not be read.
+     */
+    public void scan(final PartReader left, final PartReader right, final long end, final ByteBuffer leftBuffer,
+            final ByteBuffer rightBuffer) throws IOException {
+        if (left.isInMemory() && right.isInMemory()) {
+            int length = (int) (end - position);
+
+            scan(left.map(position, length), right.map(position, length));
+            return;
+        }
+
+        while (position < end && !done) {
+            int length = (int) Math.min(leftBuffer.capacity(), end - position);
+
+            read(left, leftBuffer, position, length);
+            read(right, rightBuffer, position, length);
+
+            scan(leftBuffer, rightBuffer);
+        }
+    }
+
+    /**
+     * Reports the run of differences that may be still open when the end of
+     * the parts is reached.
+     * 
+     * @return true if there was a run open until the last scanned byte.
+     */
+    public boolean finish() {
+        boolean open = runStart >= 0;
+
+        closeRun(position);
+
+        return open;
+    }
+
+    /**
+     * @return true if the listener told the scan it can stop.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public long getLineStart() {
+        return lineStart;
+    }
+
+    private void closeRun(final long end) {
+        if (runStart >= 0) {
+            listener.onDifference(line, runStart - lineStart, end - runStart);
+
+            runStart = -1;
+            done = listener.isDone();
+        }
+    }
+
+    private static void read(final PartReader part, final ByteBuffer buffer, final long position,
+            final int length) throws IOException {
+        buffer.clear().limit(length);
+
+        while (buffer.hasRemaining()) {
+            if (part.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Part ended before position " + (position + length));
+            }
+        }
+
+        buffer.flip();
+    }
+}
@@ -0,0 +1,29 @@
+package com.waez.jsondiff.engine;
+
+import java.io.IOException;
+
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Strategy to find the edits that turn one part into another, which may have
+ * a different size.
+ * 
+ * @author Damian
+ */
+public interface EditEngine {
+
+    /**
+     * Compares both parts, notifying the listener of every edit found, in
+     * order.
+     * 
+     * @param left
+     *            the reader of the left part.
+     * @param right
+     *            the reader of the right part.
+     * @param listener
+     *            the listener to notify the edits to.
+     * @throws IOException
+     *             if any of the parts could not be read.
+     */
+    void diff(PartReader left, PartReader right, EditListener listener) throws IOException;
+}
@@ -0,0 +1,28 @@
+package com.waez.jsondiff.engine;
+
+/**
+ * Callback used by the edit engines to report every edit found, in the order
+ * of both parts.
+ * 
+ * @author Damian
+ */
+@FunctionalInterface
+public interface EditListener {
+
+    /**
+     * Notifies an edit between a region of the left part and a region of the
+     * right part. One of the regions is empty for insertions and deletions.
+     * 
+     * @param type
+     *            the kind of edit.
+     * @param leftOffset
+     *            the position of the region in the left part.
+     * @param leftLength
+     *            the amount of bytes of the region in the left part.
+     * @param rightOffset
+     *            the position of the region in the right part.
+     * @param rightLength
+     *            the amount of bytes of the region in the right part.
+     */
+    void onEdit(EditType type, long leftOffset, long leftLength, long rightOffset, long rightLength);
+}
@@ -0,0 +1,31 @@
+package com.waez.jsondiff.engine;
+
+/**
+ * Kinds of edits that turn a region of the left part into the matching region
+ * of the right part.
+ * 
+ * @author Damian
+ */
+public enum EditType {
+    /**
+     * Bytes of the left part found again in the right one, maybe at another
+     * position.
+     */
+    COPY,
+
+    /**
+     * Bytes of the right part that are not in the left one.
+     */
+    INSERT,
+
+    /**
+     * Bytes of the left part that are not in the right one.
+     */
+    DELETE,
+
+    /**
+     * Bytes of the left part that were replaced by other bytes, maybe a
+     * different amount of them, in the right one.
+     */
+    REPLACE
+}
@@ -0,0 +1,289 @@
+package com.waez.jsondiff.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Engine that finds the shortest list of insertions and deletions between two
+ * parts of any size, with the linear space refinement of the Myers algorithm.
+ * <br/>
+ * The common prefix and suffix are skipped first. The rest is split by the
+ * middle snake, found searching from both ends at once, and each half is
+ * solved the same way, so the memory used grows with the amount of edits and
+ * not with the size of the parts. Deletions and insertions next to each other
+ * are reported as a single replacement. <br/>
+ * The work done is bounded by a cost, counted in bytes compared. Once it is
+ * spent, every region not solved yet is reported as a single replacement, so
+ * the edits are still right, just not the shortest ones.
+ * 
+ * @author Damian
+ */
+public class MyersEditEngine implements EditEngine {
+    public static final long DEFAULT_MAX_COST = 100_000_000L;
+
+    // Some virtual machines reserve a few words in the header of an array.
+    private static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final long maxCost;
+
+    public MyersEditEngine() {
+        this(DEFAULT_MAX_COST);
+    }
+
+    /**
+     * Creates an engine that gives up looking for the shortest edits after
+     * the given cost.
+     * 
+     * @param maxCost
+     *            the maximum amount of bytes compared while looking for the
+     *            edits, besides the ones of the common prefix and suffix.
+     */
+    public MyersEditEngine(final long maxCost) {
+        this.maxCost = maxCost;
+    }
+
+    @Override
+    public void diff(final PartReader left, final PartReader right, final EditListener listener)
+            throws IOException {
+        long leftLength = left.size();
+        long rightLength = right.size();
+        EditCollector collector = new EditCollector(listener);
+
+        // A single mapping can't go beyond 2 GB, and neither can the positions
+        // of the search, so bigger parts are reported as a whole.
+        if (leftLength > Integer.MAX_VALUE || rightLength > Integer.MAX_VALUE) {
+            collector.finish(leftLength, rightLength);
+            return;
+        }
+
+        ByteBuffer a = left.map(0, (int) leftLength).slice();
+        ByteBuffer b = right.map(0, (int) rightLength).slice();
+
+        new Search(a, b, collector).diff(0, (int) leftLength, 0, (int) rightLength);
+
+        collector.finish(leftLength, rightLength);
+    }
+
+    /**
+     * State of the search over a pair of parts: the bytes of both of them and
+     * the cost left.
+     */
+    private class Search {
+        private final ByteBuffer a;
+        private final ByteBuffer b;
+        private final EditCollector collector;
+        private long cost = maxCost;
+
+        Search(final ByteBuffer a, final ByteBuffer b, final EditCollector collector) {
+            this.a = a;
+            this.b = b;
+            this.collector = collector;
+        }
+
+        /**
+         * Finds the edits between a[a0, a1) and b[b0, b1), reporting the
+         * matches found in order.
+         */
+        void diff(int a0, int a1, int b0, int b1) {
+            int prefix = 0;
+
+            while (a0 + prefix < a1 && b0 + prefix < b1 && a.get(a0 + prefix) == b.get(b0 + prefix)) {
+                prefix++;
+            }
+
+            if (prefix > 0) {
+                collector.match(a0, b0, prefix);
+                a0 += prefix;
+                b0 += prefix;
+            }
+
+            int suffix = 0;
+
+            while (a0 < a1 - suffix && b0 < b1 - suffix && a.get(a1 - suffix - 1) == b.get(b1 - suffix - 1)) {
+                suffix++;
+            }
+
+            a1 -= suffix;
+            b1 -= suffix;
+
+            // When one side is empty, or no cost is left, the whole region is
+            // left as a gap between the matches around it.
+            if (a0 < a1 && b0 < b1 && cost > 0) {
+                bisect(a0, a1, b0, b1);
+            }
+
+            if (suffix > 0) {
+                collector.match(a1, b1, suffix);
+            }
+        }
+
+        /**
+         * Finds the middle snake of a[a0, a1) and b[b0, b1), walking the
+         * diagonals forward from the start and backward from the end until
+         * both paths overlap, and solves each side of it.
+         */
+        private void bisect(final int a0, final int a1, final int b0, final int b1) {
+            int n = a1 - a0;
+            int m = b1 - b0;
+
+            // Walking d steps costs at least d comparisons per step, so the
+            // cost left bounds how far the search can go, and so the size of
+            // the diagonals it keeps. Both sides may add up to more than an
+            // int, and the diagonals must fit in the arrays that can be
+            // allocated, so a search that needs more of them gives up sooner,
+            // leaving the region as a single replacement.
+            long reachable = (long) Math.sqrt(2.0 * cost) + 1;
+            long allocatable = (maxDiagonals() - 3) / 2;
+            int maxD = (int) Math.min(((long) n + m + 1) / 2, Math.min(reachable, allocatable));
+
+            if (maxD <= 0) {
+                return;
+            }
+
+            int offset = maxD + 1;
+            int length = 2 * maxD + 3;
+            int[] forward = new int[length];
+            int[] backward = new int[length];
+
+            Arrays.fill(forward, -1);
+            Arrays.fill(backward, -1);
+            forward[offset + 1] = 0;
+            backward[offset + 1] = 0;
+
+            int delta = n - m;
+            // With an odd delta the paths overlap in a forward step, and with
+            // an even one in a backward step.
+            boolean front = (delta & 1) != 0;
+            int k1start = 0;
+            int k1end = 0;
+            int k2start = 0;
+            int k2end = 0;
+
+            for (int d = 0; d < maxD && cost > 0; d++) {
+                for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                    int k1Offset = offset + k1;
+                    int x1 = k1 == -d || k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1]
+                            ? forward[k1Offset + 1] : forward[k1Offset - 1] + 1;
+                    int y1 = x1 - k1;
+
+                    cost--;
+
+                    while (x1 < n && y1 < m && a.get(a0 + x1) == b.get(b0 + y1)) {
+                        x1++;
+                        y1++;
+                        cost--;
+                    }
+
+                    forward[k1Offset] = x1;
+
+                    if (x1 > n) {
+                        k1end += 2;
+                    } else if (y1 > m) {
+                        k1start += 2;
+                    } else if (front) {
+                        long k2Offset = (long) offset + delta - k1;
+
+                        if (k2Offset >= 0 && k2Offset < length && backward[(int) k2Offset] != -1
+                                && x1 >= n - backward[(int) k2Offset]) {
+                            split(a0, a1, b0, b1, x1, y1);
+                            return;
+                        }
+                    }
+                }
+
+                for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                    int k2Offset = offset + k2;
+                    int x2 = k2 == -d || k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1]
+                            ? backward[k2Offset + 1] : backward[k2Offset - 1] + 1;
+                    int y2 = x2 - k2;
+
+                    cost--;
+
+                    while (x2 < n && y2 < m && a.get(a1 - x2 - 1) == b.get(b1 - y2 - 1)) {
+                        x2++;
+                        y2++;
+                        cost--;
+                    }
+
+                    backward[k2Offset] = x2;
+
+                    if (x2 > n) {
+                        k2end += 2;
+                    } else if (y2 > m) {
+                        k2start += 2;
+                    } else if (!front) {
+                        long k1Offset = (long) offset + delta - k2;
+
+                        if (k1Offset >= 0 && k1Offset < length && forward[(int) k1Offset] != -1) {
+                            int x1 = forward[(int) k1Offset];
+                            int y1 = (int) (offset + x1 - k1Offset);
+
+                            if (x1 >= n - x2) {
+                                split(a0, a1, b0, b1, x1, y1);
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // The paths didn't overlap before running out of cost, so the
+            // region is left as a gap, reported as a single replacement.
+        }
+
+        /**
+         * @return the amount of diagonals each of the arrays of a search can
+         *         keep: as many as an array can hold, as long as both of them
+         *         take at most half of the heap.
+         */
+        private long maxDiagonals() {
+            return Math.min(MAX_ARRAY_LENGTH, Runtime.getRuntime().maxMemory() / 2 / (2L * Integer.BYTES));
+        }
+
+        private void split(final int a0, final int a1, final int b0, final int b1, final int x, final int y) {
+            diff(a0, a0 + x, b0, b0 + y);
+            diff(a0 + x, a1, b0 + y, b1);
+        }
+    }
+
+    /**
+     * Turns the matches found, in order, into the edits of the gaps between
+     * them.
+     */
+    private static class EditCollector {
+        private final EditListener listener;
+        private long leftEnd;
+        private long rightEnd;
+
+        EditCollector(final EditListener listener) {
+            this.listener = listener;
+        }
+
+        void match(final long leftOffset, final long rightOffset, final long length) {
+            gap(leftOffset, rightOffset);
+
+            leftEnd = leftOffset + length;
+            rightEnd = rightOffset + length;
+        }
+
+        void finish(final long leftLength, final long rightLength) {
+            gap(leftLength, rightLength);
+        }
+
+        private void gap(final long leftOffset, final long rightOffset) {
+            long leftLength = leftOffset - leftEnd;
+            long rightLength = rightOffset - rightEnd;
+
+            if (leftLength > 0 && rightLength > 0) {
+                listener.onEdit(EditType.REPLACE, leftEnd, leftLength, rightEnd, rightLength);
+            } else if (leftLength > 0) {
+                listener.onEdit(EditType.DELETE, leftEnd, leftLength, rightEnd, 0);
+            } else if (rightLength > 0) {
+                listener.onEdit(EditType.INSERT, leftEnd, 0, rightEnd, rightLength);
+            }
+        }
+    }
+}
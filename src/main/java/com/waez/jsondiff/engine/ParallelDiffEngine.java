@@ -0,0 +1,201 @@
+package com.waez.jsondiff.engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Engine that finds the differences between two parts of the same size
+ * splitting them in chunks that are compared in parallel on a
+ * {@link ForkJoinPool}, each one with its own {@link DiffScanner} and
+ * positional reads over the shared readers. <br/>
+ * Every chunk is scanned as if it started a new line, so once all of them are
+ * done their results are merged in order: lines and offsets are shifted with
+ * what the previous chunks found, and runs cut by a chunk boundary are joined
+ * back, reporting exactly the same differences than {@link ByteDiffEngine}.
+ * 
+ * @author Damian
+ */
+public class ParallelDiffEngine implements DiffEngine {
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int bufferSize;
+
+    /**
+     * Creates an engine with its own pool of threads, which are daemons so
+     * they never hold the JVM shutdown.
+     * 
+     * @param parallelism
+     *            the amount of threads used to compare the chunks.
+     * @param chunkSize
+     *            the amount of bytes of each chunk.
+     * @param bufferSize
+     *            the size of the buffers used to read each chunk.
+     */
+    public ParallelDiffEngine(final int parallelism, final int chunkSize, final int bufferSize) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.chunkSize = chunkSize;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void diff(final PartReader left, final PartReader right, final DiffListener listener)
+            throws IOException {
+        long length = Math.min(left.size(), right.size());
+
+        Chunk[] chunks = new Chunk[(int) ((length + chunkSize - 1) / chunkSize)];
+
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i * chunkSize;
+
+            chunks[i] = new Chunk(start, Math.min(start + chunkSize, length));
+        }
+
+        try {
+            pool.invoke(new ChunksTask(left, right, chunks, 0, chunks.length));
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+
+        merge(chunks, listener);
+    }
+
+    private static void merge(final Chunk[] chunks, final DiffListener listener) {
+        long lineBase = 0;
+        long lineStart = 0;
+
+        boolean pending = false;
+        boolean joinable = false;
+        long pendingLine = 0;
+        long pendingOffset = 0;
+        long pendingLength = 0;
+
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.size; i += Chunk.FIELDS) {
+                long localLine = chunk.runs[i];
+                long localOffset = chunk.runs[i + 1];
+                long length = chunk.runs[i + 2];
+
+                if (joinable && i == 0 && localLine == 0 && localOffset == 0) {
+                    // The previous chunk ended in the middle of this run.
+                    pendingLength += length;
+                    continue;
+                }
+
+                if (pending) {
+                    listener.onDifference(pendingLine, pendingOffset, pendingLength);
+
+                    if (listener.isDone()) {
+                        return;
+                    }
+                }
+
+                // Runs in the first line of a chunk were measured from the
+                // chunk start, but that line may have started before.
+                pending = true;
+                pendingLine = lineBase + localLine;
+                pendingOffset = localLine == 0 ? chunk.start - lineStart + localOffset : localOffset;
+                pendingLength = length;
+            }
+
+            joinable = chunk.openAtEnd;
+
+            if (chunk.newLines > 0) {
+                lineBase += chunk.newLines;
+                lineStart = chunk.lastLineStart;
+            }
+        }
+
+        if (pending) {
+            listener.onDifference(pendingLine, pendingOffset, pendingLength);
+        }
+    }
+
+    /**
+     * Task that splits the chunks in halves until there is only one of them
+     * to compare.
+     */
+    private class ChunksTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PartReader left;
+        private final PartReader right;
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        ChunksTask(final PartReader left, final PartReader right, final Chunk[] chunks, final int from,
+                final int to) {
+            this.left = left;
+            this.right = right;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+
+                invokeAll(new ChunksTask(left, right, chunks, from, middle),
+                        new ChunksTask(left, right, chunks, middle, to));
+            } else if (to > from) {
+                try {
+                    scan(chunks[from]);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+        }
+
+        private void scan(final Chunk chunk) throws IOException {
+            DiffScanner scanner = new DiffScanner(chunk, chunk.start, 0, chunk.start);
+
+            scanner.scan(left, right, chunk.end, ByteBuffer.allocate(bufferSize), ByteBuffer.allocate(bufferSize));
+
+            chunk.openAtEnd = scanner.finish();
+            chunk.newLines = scanner.getLine();
+            chunk.lastLineStart = scanner.getLineStart();
+        }
+    }
+
+    /**
+     * Range of bytes compared by a single task, that keeps the runs found
+     * packed as (line, offset, length) with the lines and offsets relative to
+     * the start of the chunk.
+     */
+    private static class Chunk implements DiffListener {
+        private static final int FIELDS = 3;
+
+        private final long start;
+        private final long end;
+
+        private long[] runs = new long[FIELDS * 16];
+        private int size;
+        private boolean openAtEnd;
+        private long newLines;
+        private long lastLineStart;
+
+        Chunk(final long start, final long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void onDifference(final long line, final long offset, final long length) {
+            if (size == runs.length) {
+                runs = Arrays.copyOf(runs, runs.length * 2);
+            }
+
+            runs[size++] = line;
+            runs[size++] = offset;
+            runs[size++] = length;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.waez.jsondiff.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Engine that describes the right part as copies of regions of the left one
+ * and inserted bytes, like rsync does, so content that was shifted or moved
+ * is found no matter how far it went. <br/>
+ * The left part is split in blocks, indexed by a Buzhash rolling checksum.
+ * The right part is scanned with a window of the same size whose checksum is
+ * updated byte by byte, so every position is looked up in constant time, and
+ * the whole scan is roughly linear. A block whose checksum matches is checked
+ * byte by byte, since both parts are at hand, and then the match is extended
+ * forward and backward as far as the bytes are equal. The common prefix is
+ * copied right away, and whatever is not copied is reported as inserted.
+ *
+ * @author Damian
+ */
+public class RollingHashEditEngine implements EditEngine {
+    public static final int DEFAULT_BLOCK_SIZE = 512;
+
+    /**
+     * Random value of each byte, fixed so the checksums are always the same.
+     */
+    private static final int[] TABLE = new int[256];
+
+    static {
+        Random random = new Random(0x6a736f6e64696666L);
+
+        for (int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = random.nextInt();
+        }
+    }
+
+    private final int blockSize;
+
+    public RollingHashEditEngine() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates an engine that indexes the left part in blocks of the given
+     * size.
+     *
+     * @param blockSize
+     *            the amount of bytes of each block, the shortest copy found.
+     */
+    public RollingHashEditEngine(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public void diff(final PartReader left, final PartReader right, final EditListener listener)
+            throws IOException {
+        long leftLength = left.size();
+        long rightLength = right.size();
+
+        // A single mapping can't go beyond 2 GB, and neither can the positions
+        // of the index, so a bigger right part is reported as inserted.
+        if (leftLength > Integer.MAX_VALUE || rightLength > Integer.MAX_VALUE) {
+            if (rightLength > 0) {
+                listener.onEdit(EditType.INSERT, 0, 0, 0, rightLength);
+            }
+
+            return;
+        }
+
+        ByteBuffer a = left.map(0, (int) leftLength).slice();
+        ByteBuffer b = right.map(0, (int) rightLength).slice();
+
+        scan(a, b, new BlockTable(a, blockSize), listener);
+    }
+
+    private void scan(final ByteBuffer a, final ByteBuffer b, final BlockTable table, final EditListener listener) {
+        int n = a.capacity();
+        int m = b.capacity();
+        int prefix = 0;
+
+        // A common prefix shorter than a block would never be found in the
+        // index, yet it is what most insertions near the start leave behind.
+        while (prefix < n && prefix < m && a.get(prefix) == b.get(prefix)) {
+            prefix++;
+        }
+
+        if (prefix > 0) {
+            listener.onEdit(EditType.COPY, 0, prefix, 0, prefix);
+        }
+
+        int literal = prefix;
+        int leftEnd = prefix;
+        int position = prefix;
+        int hash = position + blockSize <= m ? hash(b, position, blockSize) : 0;
+
+        while (position + blockSize <= m) {
+            int block = table.find(hash, b, position);
+
+            if (block < 0) {
+                // Rolls the window one byte forward.
+                if (position + blockSize < m) {
+                    hash = Integer.rotateLeft(hash, 1)
+                            ^ Integer.rotateLeft(TABLE[b.get(position) & 0xff], blockSize)
+                            ^ TABLE[b.get(position + blockSize) & 0xff];
+                }
+
+                position++;
+                continue;
+            }
+
+            int leftStart = block;
+            int rightStart = position;
+            int length = blockSize;
+
+            // Shifted content hardly starts at the edge of a block, so the
+            // match takes back the bytes before it that are equal as well.
+            while (rightStart > literal && leftStart > 0 && a.get(leftStart - 1) == b.get(rightStart - 1)) {
+                leftStart--;
+                rightStart--;
+                length++;
+            }
+
+            while (leftStart + length < n && rightStart + length < m
+                    && a.get(leftStart + length) == b.get(rightStart + length)) {
+                length++;
+            }
+
+            if (rightStart > literal) {
+                listener.onEdit(EditType.INSERT, leftEnd, 0, literal, rightStart - literal);
+            }
+
+            listener.onEdit(EditType.COPY, leftStart, length, rightStart, length);
+
+            leftEnd = leftStart + length;
+            literal = rightStart + length;
+            position = literal;
+
+            if (position + blockSize <= m) {
+                hash = hash(b, position, blockSize);
+            }
+        }
+
+        if (m > literal) {
+            listener.onEdit(EditType.INSERT, leftEnd, 0, literal, m - literal);
+        }
+    }
+
+    private static int hash(final ByteBuffer buffer, final int position, final int length) {
+        int hash = 0;
+
+        for (int i = 0; i < length; i++) {
+            hash = Integer.rotateLeft(hash, 1) ^ TABLE[buffer.get(position + i) & 0xff];
+        }
+
+        return hash;
+    }
+
+    /**
+     * Open addressing table from the checksum of every block of the left part
+     * to its position, kept in a pair of arrays of ints. Blocks repeated in
+     * the left part are kept once, so repetitive content doesn't make the
+     * lookups walk long chains of equal checksums.
+     */
+    private static class BlockTable {
+        private final ByteBuffer content;
+        private final int blockSize;
+        private final int[] hashes;
+        private final int[] positions;
+        private final int mask;
+
+        BlockTable(final ByteBuffer content, final int blockSize) {
+            this.content = content;
+            this.blockSize = blockSize;
+
+            int blocks = content.capacity() / blockSize;
+            int capacity = Integer.highestOneBit(Math.max(1, blocks) * 2 - 1) * 2;
+
+            this.hashes = new int[capacity];
+            this.positions = new int[capacity];
+            this.mask = capacity - 1;
+
+            Arrays.fill(positions, -1);
+
+            for (int block = 0; block < blocks; block++) {
+                int position = block * blockSize;
+                int hash = hash(content, position, blockSize);
+
+                if (find(hash, content, position) < 0) {
+                    int slot = slot(hash);
+
+                    while (positions[slot] >= 0) {
+                        slot = (slot + 1) & mask;
+                    }
+
+                    hashes[slot] = hash;
+                    positions[slot] = position;
+                }
+            }
+        }
+
+        /**
+         * @return the position of a block of the left part equal to the
+         *         window of the given buffer, or -1 if there is none.
+         */
+        int find(final int hash, final ByteBuffer buffer, final int position) {
+            for (int slot = slot(hash); positions[slot] >= 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && equal(positions[slot], buffer, position)) {
+                    return positions[slot];
+                }
+            }
+
+            return -1;
+        }
+
+        private boolean equal(final int block, final ByteBuffer buffer, final int position) {
+            for (int i = 0; i < blockSize; i++) {
+                if (content.get(block + i) != buffer.get(position + i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private int slot(final int hash) {
+            // Mixes the bits of the checksum before taking the low ones.
+            return (hash ^ (hash >>> 16)) * 0x9e3779b9 & mask;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.waez.jsondiff.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Kernel that compares 8 bytes at a time, checking every byte of the words
+ * at once with bit tricks, and byte by byte only around the byte it stops
+ * at. It runs on any JVM, and it is the one used when the vector kernel is
+ * not available.
+ * 
+ * @author Damian
+ */
+public class ScalarCompareKernel implements CompareKernel {
+    private static final byte NEW_LINE = '\n';
+    private static final long NEW_LINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    @Override
+    public int skipEqual(final ByteBuffer left, final ByteBuffer right, final int from, final int to,
+            final int shift) {
+        int i = from;
+
+        while (i + Long.BYTES <= to) {
+            long word = left.getLong(i);
+
+            if (word != right.getLong(i + shift) || hasZeroByte(word ^ NEW_LINES)) {
+                break;
+            }
+
+            i += Long.BYTES;
+        }
+
+        while (i < to) {
+            byte leftByte = left.get(i);
+
+            if (leftByte != right.get(i + shift) || leftByte == NEW_LINE) {
+                break;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    @Override
+    public int skipDifferent(final ByteBuffer left, final ByteBuffer right, final int from, final int to,
+            final int shift) {
+        int i = from;
+
+        while (i + Long.BYTES <= to) {
+            long word = left.getLong(i);
+
+            // A zero byte of the xor is a pair of equal bytes.
+            if (hasZeroByte(word ^ right.getLong(i + shift)) || hasZeroByte(word ^ NEW_LINES)) {
+                break;
+            }
+
+            i += Long.BYTES;
+        }
+
+        while (i < to) {
+            byte leftByte = left.get(i);
+
+            if (leftByte == right.get(i + shift) || leftByte == NEW_LINE) {
+                break;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return "ScalarCompareKernel";
+    }
+
+    /**
+     * Tells if any of the 8 bytes of the word is zero, checking all of them at
+     * once.
+     */
+    private static boolean hasZeroByte(final long word) {
+        return ((word - LOW_BITS) & ~word & HIGH_BITS) != 0;
+    }
+}
@@ -0,0 +1,772 @@
+package com.waez.jsondiff.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.waez.jsondiff.store.PartInputStream;
+import com.waez.jsondiff.store.PartReader;
+
+/**
+ * Engine that compares two parts as JSON documents instead of as bytes, so
+ * reordered keys and reformatting are not differences. Each change is
+ * reported with the JSON Pointer of the value, and its old and new JSON
+ * text. <br/>
+ * Both documents are tokenized with a streaming parser and walked in
+ * lockstep, so while they have the same structure, the memory used grows
+ * with how deep the values are nested, not with the size of the documents.
+ * Arrays are compared element by element. Objects are compared member by
+ * member while their names come in the same order; once they don't, the rest
+ * of the members of both objects are read, keeping just a hash of each value
+ * and where it is, and matched by name. Values with the same hash are skipped
+ * without comparing them, and the rest are compared by parsing them again
+ * from where they are. Objects with more members than can be kept at once are
+ * matched in several passes, each one over the members whose names fall in a
+ * partition of their hashes, so the memory used doesn't grow with how wide
+ * the objects are either. <br/>
+ * Values are walked recursively, so documents nested deeper than a maximum
+ * are rejected as a {@link JsonParseException} instead of running out of
+ * stack. <br/>
+ * The hash of an object doesn't depend on the order of its members, and the
+ * one of an array does on the order of its elements, unless the arrays are
+ * compared regardless of it. <br/>
+ * Arrays can also be compared regardless of the order of their elements,
+ * matching them by the value at a key path, or else by their hash. The
+ * elements of the left array are kept in an index, with just their key, hash
+ * and where they are, and the elements of the right one are looked up in it
+ * while they are read, so only the elements added, removed or changed are
+ * reported, and the time is linear in the size of the arrays. Elements
+ * matched by key whose hashes differ are compared in depth, reported with
+ * their index in the right array.
+ *
+ * @author Damian
+ */
+public class StructuralDiffEngine {
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 1024;
+    public static final int DEFAULT_MAX_DEPTH = 256;
+    public static final int DEFAULT_MAX_MATCHED_MEMBERS = 10000;
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long OBJECT_SEED = 0x5bd1e995L;
+    private static final long ARRAY_SEED = 0x1b873593L;
+    private static final long KEY_SEED = 0xe6546b64L;
+    private static final String[] NO_KEY = new String[0];
+    private static final String ELLIPSIS = "...";
+
+    private final int maxValueLength;
+    private final int maxDepth;
+    private final int maxMatchedMembers;
+    private final boolean unorderedArrays;
+    private final String[] arrayKey;
+
+    public StructuralDiffEngine() {
+        this(DEFAULT_MAX_VALUE_LENGTH);
+    }
+
+    public StructuralDiffEngine(final int maxValueLength) {
+        this(maxValueLength, false, null);
+    }
+
+    /**
+     * Creates an engine that cuts the values reported, and compares the
+     * arrays by position or regardless of the order of their elements.
+     *
+     * @param maxValueLength
+     *            the maximum length of the JSON text of the values reported,
+     *            longer ones are cut and end with "...".
+     * @param unorderedArrays
+     *            if the elements of the arrays are matched regardless of
+     *            their order, instead of by position.
+     * @param arrayKey
+     *            the JSON Pointer, inside each element, of the value the
+     *            elements are matched by, or null to match them by their
+     *            hash. Elements without it are matched by their hash.
+     * @throws IllegalArgumentException
+     *             if the key is not a JSON Pointer.
+     */
+    public StructuralDiffEngine(final int maxValueLength, final boolean unorderedArrays, final String arrayKey) {
+        this(maxValueLength, DEFAULT_MAX_DEPTH, DEFAULT_MAX_MATCHED_MEMBERS, unorderedArrays, arrayKey);
+    }
+
+    /**
+     * Creates an engine that also bounds how deep the documents can be
+     * nested, and how many members of an object are kept at once while
+     * matching them by name.
+     *
+     * @param maxValueLength
+     *            the maximum length of the JSON text of the values reported,
+     *            longer ones are cut and end with "...".
+     * @param maxDepth
+     *            the maximum amount of objects and arrays nested inside each
+     *            other, deeper documents are rejected.
+     * @param maxMatchedMembers
+     *            the maximum amount of members of each side kept at once
+     *            while matching them by name.
+     * @param unorderedArrays
+     *            if the elements of the arrays are matched regardless of
+     *            their order, instead of by position.
+     * @param arrayKey
+     *            the JSON Pointer, inside each element, of the value the
+     *            elements are matched by, or null to match them by their
+     *            hash. Elements without it are matched by their hash.
+     * @throws IllegalArgumentException
+     *             if the key is not a JSON Pointer.
+     */
+    public StructuralDiffEngine(final int maxValueLength, final int maxDepth, final int maxMatchedMembers,
+            final boolean unorderedArrays, final String arrayKey) {
+        this.maxValueLength = maxValueLength;
+        this.maxDepth = maxDepth;
+        this.maxMatchedMembers = maxMatchedMembers;
+        this.unorderedArrays = unorderedArrays || arrayKey != null;
+        this.arrayKey = arrayKey == null ? NO_KEY : parsePointer(arrayKey);
+    }
+
+    /**
+     * Compares both parts as JSON documents, notifying every change found to
+     * the listener.
+     *
+     * @param left
+     *            the reader of the left part.
+     * @param right
+     *            the reader of the right part.
+     * @param listener
+     *            the listener to notify the changes to.
+     * @throws IOException
+     *             if any of the parts could not be read, or is not JSON.
+     * @throws JsonParseException
+     *             if any of the parts is not JSON, or is nested too deep.
+     */
+    public void diff(final PartReader left, final PartReader right, final ChangeListener listener)
+            throws IOException {
+        new Walk(left, right, listener).compare(0, left.size(), 0, right.size(), "", 0);
+    }
+
+    /**
+     * Comparison of a pair of documents, which may compare some of their
+     * values again from where they are.
+     */
+    private class Walk {
+        private final PartReader left;
+        private final PartReader right;
+        private final ChangeListener listener;
+
+        Walk(final PartReader left, final PartReader right, final ChangeListener listener) {
+            this.left = left;
+            this.right = right;
+            this.listener = listener;
+        }
+
+        /**
+         * Compares the values in the given regions of both parts, nested
+         * inside the given amount of objects and arrays.
+         */
+        void compare(final long leftFrom, final long leftTo, final long rightFrom, final long rightTo,
+                final String path, final int depth) throws IOException {
+            try (Side l = new Side(left, leftFrom, leftTo); Side r = new Side(right, rightFrom, rightTo)) {
+                JsonToken leftToken = l.parser.nextToken();
+                JsonToken rightToken = r.parser.nextToken();
+
+                if (leftToken == null && rightToken == null) {
+                    return;
+                }
+
+                if (leftToken == null) {
+                    listener.onChange(ChangeType.ADDED, path, null, r.text());
+                } else if (rightToken == null) {
+                    listener.onChange(ChangeType.REMOVED, path, l.text(), null);
+                } else {
+                    compareValues(l, r, path, depth);
+                }
+            }
+        }
+
+        /**
+         * Compares the values both parsers are at, leaving them at their last
+         * token.
+         */
+        private void compareValues(final Side l, final Side r, final String path, final int depth)
+                throws IOException {
+            JsonToken leftToken = l.parser.getCurrentToken();
+            JsonToken rightToken = r.parser.getCurrentToken();
+
+            if (leftToken == JsonToken.START_OBJECT && rightToken == JsonToken.START_OBJECT) {
+                l.checkDepth(depth);
+                compareObjects(l, r, path, depth);
+            } else if (leftToken == JsonToken.START_ARRAY && rightToken == JsonToken.START_ARRAY) {
+                l.checkDepth(depth);
+                compareArrays(l, r, path, depth);
+            } else if (leftToken != rightToken || leftToken.isStructStart()
+                    || !l.parser.getText().equals(r.parser.getText())) {
+                listener.onChange(ChangeType.CHANGED, path, l.text(), r.text());
+            }
+        }
+
+        private void compareArrays(final Side l, final Side r, final String path, final int depth)
+                throws IOException {
+            if (unorderedArrays) {
+                compareUnorderedArrays(l, r, path, depth);
+                return;
+            }
+
+            for (int index = 0;; index++) {
+                JsonToken leftToken = l.parser.nextToken();
+                JsonToken rightToken = r.parser.nextToken();
+
+                if (leftToken == JsonToken.END_ARRAY && rightToken == JsonToken.END_ARRAY) {
+                    return;
+                }
+
+                if (leftToken == JsonToken.END_ARRAY) {
+                    do {
+                        listener.onChange(ChangeType.ADDED, path + "/" + index++, null, r.text());
+                    } while (r.parser.nextToken() != JsonToken.END_ARRAY);
+
+                    return;
+                }
+
+                if (rightToken == JsonToken.END_ARRAY) {
+                    do {
+                        listener.onChange(ChangeType.REMOVED, path + "/" + index++, l.text(), null);
+                    } while (l.parser.nextToken() != JsonToken.END_ARRAY);
+
+                    return;
+                }
+
+                compareValues(l, r, path + "/" + index, depth + 1);
+            }
+        }
+
+        private void compareUnorderedArrays(final Side l, final Side r, final String path, final int depth)
+                throws IOException {
+            ElementIndex index = new ElementIndex();
+
+            while (l.parser.nextToken() != JsonToken.END_ARRAY) {
+                long start = l.start();
+                long hash = l.hashElement(depth + 1);
+
+                index.add(l.key, hash, start, l.end());
+            }
+
+            index.build();
+
+            for (int position = 0; r.parser.nextToken() != JsonToken.END_ARRAY; position++) {
+                long start = r.start();
+                long hash = r.hashElement(depth + 1);
+                long end = r.end();
+                int match = index.take(r.key);
+
+                if (match < 0) {
+                    listener.onChange(ChangeType.ADDED, path + "/" + position, null, read(right, start, end));
+                } else if (index.hashes[match] != hash) {
+                    // Only elements matched by key can have different hashes.
+                    compare(index.starts[match], index.ends[match], start, end, path + "/" + position,
+                            depth + 1);
+                }
+            }
+
+            for (int element = 0; element < index.size; element++) {
+                if (!index.matched.get(element)) {
+                    String text = read(left, index.starts[element], index.ends[element]);
+
+                    listener.onChange(ChangeType.REMOVED, path + "/" + element, text, null);
+                }
+            }
+        }
+
+        private void compareObjects(final Side l, final Side r, final String path, final int depth)
+                throws IOException {
+            long leftObject = l.start();
+            long rightObject = r.start();
+
+            while (true) {
+                JsonToken leftToken = l.parser.nextToken();
+                JsonToken rightToken = r.parser.nextToken();
+
+                if (leftToken == JsonToken.END_OBJECT && rightToken == JsonToken.END_OBJECT) {
+                    return;
+                }
+
+                if (leftToken == JsonToken.FIELD_NAME && rightToken == JsonToken.FIELD_NAME
+                        && l.parser.getCurrentName().equals(r.parser.getCurrentName())) {
+                    String name = l.parser.getCurrentName();
+
+                    l.parser.nextToken();
+                    r.parser.nextToken();
+
+                    compareValues(l, r, path + "/" + escape(name), depth + 1);
+                    continue;
+                }
+
+                // From here on the members are matched by name.
+                long leftFrom = l.start();
+                long rightFrom = r.start();
+
+                Map<String, Member> leftMembers = l.members(0, 0, 1, maxMatchedMembers, depth + 1);
+                Map<String, Member> rightMembers = r.members(0, 0, 1, maxMatchedMembers, depth + 1);
+
+                if (l.parser.getCurrentToken() == JsonToken.END_OBJECT
+                        && r.parser.getCurrentToken() == JsonToken.END_OBJECT) {
+                    compareMembers(leftMembers, rightMembers, path, depth);
+                    return;
+                }
+
+                // Too many members to keep at once, so they are read again in
+                // as many passes as needed for each one to keep about as many.
+                int members = Math.max(leftMembers.size() + l.skipMembers(), rightMembers.size() + r.skipMembers());
+                int partitions = (members + maxMatchedMembers - 1) / maxMatchedMembers;
+
+                for (int partition = 0; partition < partitions; partition++) {
+                    try (Side lp = new Side(left, leftObject, l.to); Side rp = new Side(right, rightObject, r.to)) {
+                        lp.parser.nextToken();
+                        lp.parser.nextToken();
+                        rp.parser.nextToken();
+                        rp.parser.nextToken();
+
+                        compareMembers(lp.members(leftFrom, partition, partitions, Integer.MAX_VALUE, depth + 1),
+                                rp.members(rightFrom, partition, partitions, Integer.MAX_VALUE, depth + 1), path,
+                                depth);
+                    }
+                }
+
+                return;
+            }
+        }
+
+        private void compareMembers(final Map<String, Member> leftMembers, final Map<String, Member> rightMembers,
+                final String path, final int depth) throws IOException {
+            for (Map.Entry<String, Member> entry : leftMembers.entrySet()) {
+                String memberPath = path + "/" + escape(entry.getKey());
+                Member leftMember = entry.getValue();
+                Member rightMember = rightMembers.remove(entry.getKey());
+
+                if (rightMember == null) {
+                    listener.onChange(ChangeType.REMOVED, memberPath, leftMember.text(left), null);
+                } else if (leftMember.hash == rightMember.hash) {
+                    continue;
+                } else if (leftMember.token == rightMember.token && leftMember.token.isStructStart()) {
+                    compare(leftMember.start, leftMember.end, rightMember.start, rightMember.end, memberPath,
+                            depth + 1);
+                } else {
+                    listener.onChange(ChangeType.CHANGED, memberPath, leftMember.text(left),
+                            rightMember.text(right));
+                }
+            }
+
+            for (Map.Entry<String, Member> entry : rightMembers.entrySet()) {
+                listener.onChange(ChangeType.ADDED, path + "/" + escape(entry.getKey()), null,
+                        entry.getValue().text(right));
+            }
+        }
+    }
+
+    /**
+     * Parser over a region of a part, which knows where its tokens are in the
+     * part.
+     */
+    private class Side implements AutoCloseable {
+        private final PartReader reader;
+        private final long base;
+        private final long to;
+        private final JsonParser parser;
+
+        /**
+         * Key of the last element hashed, and if it was found at the key path.
+         */
+        private long key;
+        private boolean keyFound;
+
+        Side(final PartReader reader, final long from, final long to) throws IOException {
+            this.reader = reader;
+            this.base = from;
+            this.to = to;
+            this.parser = FACTORY.createParser(new PartInputStream(reader, from, to, BUFFER_SIZE));
+        }
+
+        /**
+         * Reads the members of the object the parser is in, from the name or
+         * the end of the object it is at, hashing the values of the ones that
+         * fall in the given partition. It stops at the name of the next
+         * member once the given amount of them are read.
+         *
+         * @param from
+         *            the position in the part of the first member to read, the
+         *            ones before are skipped.
+         * @param partition
+         *            the partition of the names of the members to read.
+         * @param partitions
+         *            the amount of partitions the names are split in.
+         * @param limit
+         *            the maximum amount of members to read.
+         * @param depth
+         *            the amount of objects and arrays the values are in.
+         */
+        Map<String, Member> members(final long from, final int partition, final int partitions, final int limit,
+                final int depth) throws IOException {
+            Map<String, Member> members = new LinkedHashMap<>();
+
+            while (parser.getCurrentToken() == JsonToken.FIELD_NAME && members.size() < limit) {
+                String name = parser.getCurrentName();
+                long nameStart = start();
+                JsonToken token = parser.nextToken();
+                long start = start();
+
+                if (nameStart < from || Math.floorMod((int) mix(name.hashCode()), partitions) != partition) {
+                    parser.skipChildren();
+                } else if (token.isStructStart()) {
+                    long hash = hash(NO_KEY, -1, depth);
+
+                    members.put(name, new Member(token, hash, start, end(), null));
+                } else {
+                    members.put(name, new Member(token, hash(NO_KEY, -1, depth), start, start, scalarText()));
+                }
+
+                parser.nextToken();
+            }
+
+            return members;
+        }
+
+        /**
+         * Skips the rest of the members of the object the parser is in, from
+         * the name or the end of the object it is at.
+         *
+         * @return the amount of members skipped.
+         */
+        int skipMembers() throws IOException {
+            int members = 0;
+
+            while (parser.getCurrentToken() == JsonToken.FIELD_NAME) {
+                parser.nextToken();
+                parser.skipChildren();
+                parser.nextToken();
+                members++;
+            }
+
+            return members;
+        }
+
+        /**
+         * Rejects the object or array the parser is at when it is nested
+         * inside too many others.
+         */
+        void checkDepth(final int depth) throws JsonParseException {
+            if (depth >= maxDepth) {
+                throw new JsonParseException(parser, "Objects and arrays nested deeper than " + maxDepth
+                        + " levels");
+            }
+        }
+
+        long start() {
+            return base + parser.getTokenLocation().getByteOffset();
+        }
+
+        long end() {
+            return base + parser.getCurrentLocation().getByteOffset();
+        }
+
+        /**
+         * Hashes the element of an array the parser is at, keeping its key:
+         * the hash of the value at the key path, or else the hash of the
+         * whole element.
+         *
+         * @param depth
+         *            the amount of objects and arrays the element is in.
+         * @return the hash of the element.
+         */
+        long hashElement(final int depth) throws IOException {
+            keyFound = false;
+
+            long hash = hash(arrayKey, 0, depth);
+
+            if (!keyFound) {
+                key = hash;
+            }
+
+            return hash;
+        }
+
+        /**
+         * @return the JSON text of the value the parser is at, which is
+         *         skipped.
+         */
+        String text() throws IOException {
+            if (!parser.getCurrentToken().isStructStart()) {
+                return scalarText();
+            }
+
+            long start = base + parser.getTokenLocation().getByteOffset();
+
+            parser.skipChildren();
+
+            return read(reader, start, base + parser.getCurrentLocation().getByteOffset());
+        }
+
+        /**
+         * Hashes the value the parser is at, looking for the value at the
+         * given key path on the way.
+         *
+         * @param keyPath
+         *            the names of the members down to the key.
+         * @param keyDepth
+         *            how many names of the key path lead to this value, or -1
+         *            if it is not on the key path.
+         * @param depth
+         *            the amount of objects and arrays the value is in.
+         * @return the hash of the value, which is read until its last token.
+         */
+        private long hash(final String[] keyPath, final int keyDepth, final int depth) throws IOException {
+            JsonToken token = parser.getCurrentToken();
+
+            if (token.isStructStart()) {
+                checkDepth(depth);
+            }
+
+            if (token == JsonToken.START_OBJECT) {
+                long hash = OBJECT_SEED;
+
+                // Summed, so the order of the members doesn't matter.
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    boolean onKeyPath = keyDepth >= 0 && keyDepth < keyPath.length
+                            && name.equals(keyPath[keyDepth]);
+
+                    parser.nextToken();
+
+                    long value = hash(keyPath, onKeyPath ? keyDepth + 1 : -1, depth + 1);
+
+                    if (onKeyPath && keyDepth + 1 == keyPath.length) {
+                        key = mix(value ^ KEY_SEED);
+                        keyFound = true;
+                    }
+
+                    hash += mix(HASH_FUNCTION.hashUnencodedChars(name).asLong() * 31 + value);
+                }
+
+                return mix(hash);
+            }
+
+            if (token == JsonToken.START_ARRAY) {
+                long hash = ARRAY_SEED;
+
+                // Summed as well when the arrays are unordered, so reordered
+                // elements of nested arrays don't make their parents differ.
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    long value = hash(keyPath, -1, depth + 1);
+
+                    hash = unorderedArrays ? hash + mix(value) : mix(hash * 31 + value);
+                }
+
+                return unorderedArrays ? mix(hash) : hash;
+            }
+
+            return HASH_FUNCTION.newHasher().putInt(token.ordinal()).putUnencodedChars(parser.getText()).hash()
+                    .asLong();
+        }
+
+        private String scalarText() throws IOException {
+            if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+                return cut("\"" + new String(JsonStringEncoder.getInstance().quoteAsString(parser.getText())) + "\"");
+            }
+
+            return cut(parser.getText());
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    /**
+     * A member of an object read while matching the members by name: the
+     * hash of its value, and where the value is, or its text when it is not
+     * an object nor an array.
+     */
+    private class Member {
+        private final JsonToken token;
+        private final long hash;
+        private final long start;
+        private final long end;
+        private final String text;
+
+        Member(final JsonToken token, final long hash, final long start, final long end, final String text) {
+            this.token = token;
+            this.hash = hash;
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        String text(final PartReader reader) throws IOException {
+            return text != null ? text : read(reader, start, end);
+        }
+    }
+
+    /**
+     * Elements of an array kept to be matched regardless of their order: the
+     * key, hash and region of each of them in arrays of primitives, and an
+     * open addressing table from each key to the first element with it not
+     * matched yet. The elements with the same key are chained in order.
+     */
+    private static class ElementIndex {
+        private static final int EMPTY = -2;
+        private static final int EXHAUSTED = -1;
+
+        private long[] keys = new long[16];
+        private long[] hashes = new long[16];
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+        private int size;
+
+        private long[] slotKeys;
+        private int[] heads;
+        private int[] next;
+        private int mask;
+        private BitSet matched;
+
+        void add(final long key, final long hash, final long start, final long end) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+
+            keys[size] = key;
+            hashes[size] = hash;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        /**
+         * Builds the table once every element was added.
+         */
+        void build() {
+            int capacity = Integer.highestOneBit(Math.max(1, size) * 2 - 1) * 2;
+
+            slotKeys = new long[capacity];
+            heads = new int[capacity];
+            next = new int[size];
+            mask = capacity - 1;
+            matched = new BitSet(size);
+
+            Arrays.fill(heads, EMPTY);
+
+            // Chained from the last one, so each chain starts with the first.
+            for (int element = size - 1; element >= 0; element--) {
+                int slot = slot(keys[element]);
+
+                if (heads[slot] == EMPTY) {
+                    slotKeys[slot] = keys[element];
+                    next[element] = EXHAUSTED;
+                } else {
+                    next[element] = heads[slot];
+                }
+
+                heads[slot] = element;
+            }
+        }
+
+        /**
+         * Takes the first element with the given key not matched yet.
+         *
+         * @return the element, or -1 if there is none.
+         */
+        int take(final long key) {
+            int slot = slot(key);
+            int element = heads[slot];
+
+            if (element < 0) {
+                return EXHAUSTED;
+            }
+
+            heads[slot] = next[element];
+            matched.set(element);
+
+            return element;
+        }
+
+        /**
+         * @return the slot of the key, or the empty one where it would go.
+         */
+        private int slot(final long key) {
+            int slot = (int) mix(key) & mask;
+
+            while (heads[slot] != EMPTY && slotKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+    }
+
+    /**
+     * Reads the JSON text of a value from the part, up to the maximum length.
+     */
+    private String read(final PartReader reader, final long start, final long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(end - start, maxValueLength));
+
+        while (buffer.hasRemaining() && reader.read(buffer, start + buffer.position()) > 0) {
+            // Keeps reading until the buffer is full.
+        }
+
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+
+        return end - start > maxValueLength ? text + ELLIPSIS : text;
+    }
+
+    private String cut(final String text) {
+        return text.length() > maxValueLength ? text.substring(0, maxValueLength) + ELLIPSIS : text;
+    }
+
+    /**
+     * Splits a JSON Pointer into the names it is made of.
+     */
+    private static String[] parsePointer(final String pointer) {
+        if (!pointer.startsWith("/")) {
+            throw new IllegalArgumentException("Array key must be a JSON Pointer, like /id, but was: " + pointer);
+        }
+
+        String[] names = pointer.substring(1).split("/", -1);
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].replace("~1", "/").replace("~0", "~");
+        }
+
+        return names;
+    }
+
+    /**
+     * Escapes a member name to be a reference token of a JSON Pointer.
+     */
+    private static String escape(final String name) {
+        return name.replace("~", "~0").replace("/", "~1");
+    }
+
+    /**
+     * Finalizer of MurmurHash3, which spreads every bit of the value.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9a93c5ab1bbL;
+        value ^= value >>> 33;
+
+        return value;
+    }
+}
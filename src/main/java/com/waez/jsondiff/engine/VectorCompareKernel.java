@@ -0,0 +1,71 @@
+package com.waez.jsondiff.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel that compares as many bytes at a time as the widest vector the CPU
+ * supports, 32 with AVX2 and 64 with AVX-512, using the Vector API of Java
+ * 17. The lanes that stop the skip are turned into a mask whose first set
+ * lane is the byte it stops at, and the bytes that don't fill a whole vector
+ * are left to the {@link ScalarCompareKernel}. <br/>
+ * It is only built by the "vector" profile, and needs the JVM to be started
+ * with --add-modules jdk.incubator.vector, so it is never referenced but
+ * through {@link CompareKernels}.
+ * 
+ * @author Damian
+ */
+public class VectorCompareKernel implements CompareKernel {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final byte NEW_LINE = '\n';
+
+    private final CompareKernel tail = new ScalarCompareKernel();
+
+    @Override
+    public int skipEqual(final ByteBuffer left, final ByteBuffer right, final int from, final int to,
+            final int shift) {
+        int i = from;
+
+        for (; i + SPECIES.length() <= to; i += SPECIES.length()) {
+            ByteVector leftBytes = ByteVector.fromByteBuffer(SPECIES, left, i, ByteOrder.nativeOrder());
+            ByteVector rightBytes = ByteVector.fromByteBuffer(SPECIES, right, i + shift, ByteOrder.nativeOrder());
+            VectorMask<Byte> stops = leftBytes.compare(VectorOperators.NE, rightBytes)
+                    .or(leftBytes.compare(VectorOperators.EQ, NEW_LINE));
+
+            if (stops.anyTrue()) {
+                return i + stops.firstTrue();
+            }
+        }
+
+        return tail.skipEqual(left, right, i, to, shift);
+    }
+
+    @Override
+    public int skipDifferent(final ByteBuffer left, final ByteBuffer right, final int from, final int to,
+            final int shift) {
+        int i = from;
+
+        for (; i + SPECIES.length() <= to; i += SPECIES.length()) {
+            ByteVector leftBytes = ByteVector.fromByteBuffer(SPECIES, left, i, ByteOrder.nativeOrder());
+            ByteVector rightBytes = ByteVector.fromByteBuffer(SPECIES, right, i + shift, ByteOrder.nativeOrder());
+            VectorMask<Byte> stops = leftBytes.compare(VectorOperators.EQ, rightBytes)
+                    .or(leftBytes.compare(VectorOperators.EQ, NEW_LINE));
+
+            if (stops.anyTrue()) {
+                return i + stops.firstTrue();
+            }
+        }
+
+        return tail.skipDifferent(left, right, i, to, shift);
+    }
+
+    @Override
+    public String toString() {
+        return "VectorCompareKernel [species=" + SPECIES + "]";
+    }
+}
@@ -1,12 +1,14 @@
 package com.waez.jsondiff.model;
 
-import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.waez.jsondiff.store.Part;
 
 /**
  * Class that represent the different sides needed t perform the difference
  * "left" and "right", and that associated an id to this relation. </br>
- * This class doesn't hold any kind of data at memory, but the files to point to
+ * This class doesn't hold the data by itself, but the parts kept by the store
  * with them.
  * 
  * @author Damian
@@ -14,9 +16,16 @@ import java.util.Optional;
  */
 public class DiffObject {
 
+    /**
+     * Versions are taken from a global sequence, so a diffObject created again
+     * for an expired id never repeats the versions of the previous one.
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
     private Long id;
-    private Optional<Path> leftPart = Optional.empty();
-    private Optional<Path> rightPart = Optional.empty();
+    private volatile long version = VERSIONS.incrementAndGet();
+    private volatile DiffSide left = DiffSide.EMPTY;
+    private volatile DiffSide right = DiffSide.EMPTY;
 
     public DiffObject(Long id) {
         this.id = id;
@@ -26,27 +35,91 @@ public class DiffObject {
         return id;
     }
 
-    public Optional<Path> getLeftPart() {
-        return leftPart;
+    /**
+     * @return a number that changes every time any of the parts is set, so a
+     *         result computed for a version is only valid while it lasts.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the left part together with its metadata, read at once so both
+     *         belong to the same upload.
+     */
+    public DiffSide getLeft() {
+        return left;
+    }
+
+    /**
+     * Sets the left part together with its metadata, moving to a new version.
+     */
+    public synchronized void setLeft(Optional<Part> leftPart, Optional<PartMetadata> leftMetadata) {
+        this.left = new DiffSide(leftPart, leftMetadata);
+        this.version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * @return the right part together with its metadata, read at once so both
+     *         belong to the same upload.
+     */
+    public DiffSide getRight() {
+        return right;
+    }
+
+    /**
+     * Sets the right part together with its metadata, moving to a new version.
+     */
+    public synchronized void setRight(Optional<Part> rightPart, Optional<PartMetadata> rightMetadata) {
+        this.right = new DiffSide(rightPart, rightMetadata);
+        this.version = VERSIONS.incrementAndGet();
+    }
+
+    public Optional<Part> getLeftPart() {
+        return left.getPart();
+    }
+
+    /**
+     * Sets the left part, forgetting the metadata of the previous
+     * one and moving to a new version.
+     */
+    public void setLeftPart(Optional<Part> leftPart) {
+        setLeft(leftPart, Optional.empty());
+    }
+
+    public Optional<Part> getRightPart() {
+        return right.getPart();
+    }
+
+    /**
+     * Sets the right part, forgetting the metadata of the previous
+     * one and moving to a new version.
+     */
+    public void setRightPart(Optional<Part> rightPart) {
+        setRight(rightPart, Optional.empty());
+    }
+
+    public Optional<PartMetadata> getLeftMetadata() {
+        return left.getMetadata();
     }
 
-    public void setLeftPart(Optional<Path> leftPart) {
-        this.leftPart = leftPart;
+    public synchronized void setLeftMetadata(Optional<PartMetadata> leftMetadata) {
+        this.left = new DiffSide(left.getPart(), leftMetadata);
     }
 
-    public Optional<Path> getRightPart() {
-        return rightPart;
+    public Optional<PartMetadata> getRightMetadata() {
+        return right.getMetadata();
     }
 
-    public void setRightPart(Optional<Path> rightPart) {
-        this.rightPart = rightPart;
+    public synchronized void setRightMetadata(Optional<PartMetadata> rightMetadata) {
+        this.right = new DiffSide(right.getPart(), rightMetadata);
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        builder.append("DiffObject [id=").append(id).append(", leftPart=").append(leftPart).append(", rightPart=")
-                .append(rightPart).append("]");
+        builder.append("DiffObject [id=").append(id).append(", version=").append(version).append(", left=")
+                .append(left).append(", right=").append(right).append("]");
         return builder.toString();
     }
 }
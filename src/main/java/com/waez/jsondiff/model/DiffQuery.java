@@ -0,0 +1,149 @@
+package com.waez.jsondiff.model;
+
+/**
+ * Class that represent which page of the differences is asked for: the range
+ * of lines they must be in, how many of them at most, and the cursor where the
+ * previous page stopped, if any. </br>
+ * The cursor is made of the line and the offset of the first difference that
+ * didn't fit in the previous page.
+ *
+ * @author Damian
+ *
+ */
+public class DiffQuery {
+    public static final DiffQuery ALL = new DiffQuery(0, 0, Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    private static final String CURSOR_SEPARATOR = ":";
+
+    private final long fromLine;
+    private final long fromOffset;
+    private final long toLine;
+    private final int limit;
+
+    private DiffQuery(long fromLine, long fromOffset, long toLine, int limit) {
+        this.fromLine = fromLine;
+        this.fromOffset = fromOffset;
+        this.toLine = toLine;
+        this.limit = limit;
+    }
+
+    /**
+     * Creates a query with the given parameters, where any of them can be
+     * missing.
+     *
+     * @param fromLine
+     *            the first line to look for differences, zero if null.
+     * @param toLine
+     *            the last line to look for differences, included, or the last
+     *            one of the part if null.
+     * @param limit
+     *            the maximum amount of differences to return, or all of them
+     *            if null.
+     * @param cursor
+     *            the cursor returned with the previous page, or null for the
+     *            first one.
+     * @return the query.
+     * @throws IllegalArgumentException
+     *             if any of the parameters is not valid.
+     */
+    public static DiffQuery of(Long fromLine, Long toLine, Integer limit, String cursor) {
+        long from = fromLine == null ? 0 : fromLine;
+        long to = toLine == null ? Long.MAX_VALUE : toLine;
+        long offset = 0;
+
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("Lines must be positive, and fromLine not greater than toLine");
+        }
+
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("Limit must be greater than zero");
+        }
+
+        if (cursor != null) {
+            long[] position = parseCursor(cursor);
+
+            // The cursor can only move the start forward.
+            if (position[0] > from || position[0] == from && position[1] > offset) {
+                from = position[0];
+                offset = position[1];
+            }
+        }
+
+        return new DiffQuery(from, offset, to, limit == null ? Integer.MAX_VALUE : limit);
+    }
+
+    /**
+     * Creates the cursor that makes a query start at the given difference.
+     *
+     * @param line
+     *            the line of the difference.
+     * @param offset
+     *            the offset of the difference inside the line.
+     * @return the cursor.
+     */
+    public static String cursorOf(long line, long offset) {
+        return line + CURSOR_SEPARATOR + offset;
+    }
+
+    private static long[] parseCursor(String cursor) {
+        String[] fields = cursor.split(CURSOR_SEPARATOR, -1);
+
+        try {
+            if (fields.length == 2) {
+                long line = Long.parseLong(fields[0]);
+                long offset = Long.parseLong(fields[1]);
+
+                if (line >= 0 && offset >= 0) {
+                    return new long[] { line, offset };
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            // Reported below, like any other malformed cursor.
+        }
+
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+
+    public long getFromLine() {
+        return fromLine;
+    }
+
+    public long getToLine() {
+        return toLine;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return true if this query asks for every difference.
+     */
+    public boolean isAll() {
+        return fromLine == 0 && fromOffset == 0 && toLine == Long.MAX_VALUE && limit == Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return true if a difference at the given position comes before the
+     *         start of this query.
+     */
+    public boolean isBefore(long line, long offset) {
+        return line < fromLine || line == fromLine && offset < fromOffset;
+    }
+
+    /**
+     * @return true if a difference at the given line comes after the end of
+     *         this query.
+     */
+    public boolean isAfter(long line) {
+        return line > toLine;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("DiffQuery [fromLine=").append(fromLine).append(", fromOffset=").append(fromOffset)
+                .append(", toLine=").append(toLine).append(", limit=").append(limit).append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package com.waez.jsondiff.model;
+
+import java.util.Optional;
+
+import com.waez.jsondiff.store.Part;
+
+/**
+ * Class that represent one side of a diffObject: its part together with the
+ * metadata computed when the part was written. </br>
+ * It is immutable, so whoever reads a side sees a part and the metadata that
+ * belongs to it, never the metadata of the previous part.
+ * 
+ * @author Damian
+ *
+ */
+public final class DiffSide {
+    public static final DiffSide EMPTY = new DiffSide(Optional.empty(), Optional.empty());
+
+    private final Optional<Part> part;
+    private final Optional<PartMetadata> metadata;
+
+    public DiffSide(Optional<Part> part, Optional<PartMetadata> metadata) {
+        this.part = part;
+        this.metadata = metadata;
+    }
+
+    public Optional<Part> getPart() {
+        return part;
+    }
+
+    public Optional<PartMetadata> getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("DiffSide [part=").append(part).append(", metadata=").append(metadata).append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.waez.jsondiff.model;
+
+import java.security.MessageDigest;
+import java.util.Optional;
+
+import com.google.common.io.BaseEncoding;
+import com.waez.jsondiff.engine.BlockIndex;
+
+/**
+ * Class that represent what is known about the content of a part, computed
+ * while it was written, so it can be compared with another part without
+ * reading any of them again, or reading just the blocks that differ.
+ * 
+ * @author Damian
+ *
+ */
+public class PartMetadata {
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final long length;
+    private final byte[] digest;
+    private final Optional<BlockIndex> blockIndex;
+
+    public PartMetadata(long length, byte[] digest) {
+        this(length, digest, null);
+    }
+
+    public PartMetadata(long length, byte[] digest, BlockIndex blockIndex) {
+        this.length = length;
+        this.digest = digest.clone();
+        this.blockIndex = Optional.ofNullable(blockIndex);
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    public Optional<BlockIndex> getBlockIndex() {
+        return blockIndex;
+    }
+
+    /**
+     * Tells if the part described by this metadata holds exactly the same
+     * bytes than the one described by the other.
+     * 
+     * @param other
+     *            the metadata of the part to compare with.
+     * @return true if both parts have the same length and digest.
+     */
+    public boolean sameContentAs(PartMetadata other) {
+        return length == other.length && MessageDigest.isEqual(digest, other.digest);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("PartMetadata [length=").append(length).append(", digest=")
+                .append(BaseEncoding.base16().lowerCase().encode(digest)).append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package com.waez.jsondiff.service;
+
+import com.waez.jsondiff.engine.DiffListener;
+import com.waez.jsondiff.model.DiffQuery;
+
+import dto.DiffResponseDTO;
+
+/**
+ * Listener that keeps in the response only the differences asked for by a
+ * {@link DiffQuery}, telling the engine it is done as soon as the page is full
+ * or the differences go beyond the last line asked for. <br/>
+ * When the page gets full, the response is marked as truncated, and the first
+ * difference that didn't fit is kept as the cursor of the next page.
+ *
+ * @author Damian
+ */
+class DiffPage implements DiffListener {
+    private final DiffQuery query;
+    private final DiffResponseDTO response;
+
+    private int size;
+    private boolean done;
+
+    DiffPage(final DiffQuery query, final DiffResponseDTO response) {
+        this.query = query;
+        this.response = response;
+    }
+
+    @Override
+    public void onDifference(final long line, final long offset, final long length) {
+        if (done || query.isBefore(line, offset)) {
+            return;
+        }
+
+        if (query.isAfter(line)) {
+            done = true;
+        } else if (size == query.getLimit()) {
+            response.setTruncated(true);
+            response.setNextCursor(DiffQuery.cursorOf(line, offset));
+            done = true;
+        } else {
+            response.addLine(line, offset, length);
+            size++;
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+}
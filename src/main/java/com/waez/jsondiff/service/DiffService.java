@@ -1,31 +1,76 @@
 package com.waez.jsondiff.service;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.channels.Channels;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalCause;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.waez.jsondiff.config.DiffProperties;
+import com.waez.jsondiff.engine.BlockIndex;
+import com.waez.jsondiff.engine.BlockIndexDiffEngine;
+import com.waez.jsondiff.engine.ByteDiffEngine;
+import com.waez.jsondiff.engine.DiffEngine;
+import com.waez.jsondiff.engine.DiffListener;
+import com.waez.jsondiff.engine.EditEngine;
+import com.waez.jsondiff.engine.EditListener;
+import com.waez.jsondiff.engine.MyersEditEngine;
+import com.waez.jsondiff.engine.ParallelDiffEngine;
+import com.waez.jsondiff.engine.RollingHashEditEngine;
+import com.waez.jsondiff.engine.StructuralDiffEngine;
 import com.waez.jsondiff.model.DiffObject;
-import com.waez.jsondiff.request.JSONBinaryRequest;
+import com.waez.jsondiff.model.DiffQuery;
+import com.waez.jsondiff.model.DiffSide;
+import com.waez.jsondiff.model.PartMetadata;
+import com.waez.jsondiff.store.FilePartStore;
+import com.waez.jsondiff.store.MemoryPartStore;
+import com.waez.jsondiff.store.Part;
+import com.waez.jsondiff.store.PartOutput;
+import com.waez.jsondiff.store.PartReader;
+import com.waez.jsondiff.store.PartReleasedException;
+import com.waez.jsondiff.store.PartStore;
+import com.waez.jsondiff.store.SharedPart;
+import com.waez.jsondiff.store.SlabAllocator;
+import com.waez.jsondiff.store.SlabPartStore;
+import com.waez.jsondiff.store.TieredPartStore;
 
+import dto.ChangeDTO;
 import dto.DiffResponseDTO;
+import dto.DiffSummaryDTO;
+import dto.EditDTO;
+import dto.LineDTO;
 
 /**
  * Service class that perform all the activities related to how to save the
@@ -38,30 +83,160 @@ import dto.DiffResponseDTO;
 public class DiffService {
     private static final Logger LOGGER = LoggerFactory.getLogger(DiffService.class);
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String BINARY_FIELD = "binary";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String SAME_CONTENT_MESSAGE = "Data is exactly the same";
+    private static final String NOT_SAME_SIZE_MESSAGE = "Data is NOT the same size";
+    private static final String DIFF_CALCULATED_MESSAGE = "Diff successfully calculated";
+    private static final String STRUCTURALLY_SAME_MESSAGE = "Data is structurally the same";
+    private static final String PARTS_DIRECTORY = "parts";
+    private static final String INDEX_FILE = "index";
 
+    private final PartStore store;
+    private final Optional<PartIndex> index;
+    private final PartReaper reaper;
+    private final ScheduledExecutorService maintenance;
     private final Cache<Long, DiffObject> cache;
+    private final Cache<Long, MemoizedDiff> results;
+    private final ConcurrentMap<Long, InFlightDiff> inFlight = new ConcurrentHashMap<>();
+    private final DiffEngine diffEngine;
+    private final DiffEngine parallelDiffEngine;
+    private final EditEngine editEngine;
+    private final EditEngine shiftedEditEngine;
+    private final int maxValueLength;
+    private final int maxDepth;
+    private final int maxMatchedMembers;
+    private final long parallelThreshold;
+    private final int bufferSize;
+    private final int blockSize;
+    private final double maxDifferentBlockRatio;
 
     /**
-     * Default constructor that creates a cache with a expiration policy, in
-     * order to remove the records and the associated files to it. <br/>
+     * Default constructor that creates the service with the default
+     * {@link DiffProperties}.
+     */
+    public DiffService() {
+        this(new DiffProperties());
+    }
+
+    /**
+     * Constructor that creates the service with its own {@link PartReaper}.
+     * 
+     * @param properties
+     *            the settings used to tune how the differences are performed.
+     */
+    public DiffService(final DiffProperties properties) {
+        this(properties, new PartReaper(properties));
+    }
+
+    /**
+     * Constructor that creates a cache bounded by the bytes of the parts it
+     * holds, with an expiration policy, in order to remove the records and
+     * release the parts associated to it. <br/>
+     * Parts are kept in the heap, off the heap or in files, depending on
+     * their size, or always in files of the data directory when they are
+     * durable, in which case the diffs recorded in its index are recovered.
+     * <br/>
+     * Parts are released in the background by the reaper, and expired diffs
+     * are cleaned up on a schedule, since the cache only does it when it is
+     * used. <br/>
      * Also, its responsible to create the hook to perform the file cleaning
      * when the JVM is destroyed.
+     * 
+     * @param properties
+     *            the settings used to tune how the differences are performed.
+     * @param reaper
+     *            the reaper that releases the parts no longer used.
      */
-    public DiffService() {
-        CacheBuilder<Long, DiffObject> builder = CacheBuilder.newBuilder().expireAfterWrite(5, TimeUnit.MINUTES)
+    @Autowired
+    public DiffService(final DiffProperties properties, final PartReaper reaper) {
+        this.reaper = reaper;
+
+        DiffProperties.Diff diffProperties = properties.getDiff();
+        DiffProperties.Store storeProperties = properties.getStore();
+        DiffProperties.Cache cacheProperties = properties.getCache();
+
+        // Parts that reach the off heap store are bigger than the heap ones,
+        // so its smallest slab is the size of the biggest heap part.
+        SlabAllocator allocator = new SlabAllocator(storeProperties.getHeapMaxSize(),
+                storeProperties.getOffHeapMaxSize(), storeProperties.getOffHeapBudget());
+
+        if (storeProperties.isDurable()) {
+            // Every part goes to a file of the data directory, so the index
+            // can point to it after a restart.
+            Path dataDirectory = Paths.get(storeProperties.getDataDirectory());
+            Path partsDirectory = dataDirectory.resolve(PARTS_DIRECTORY);
+
+            try {
+                Files.createDirectories(partsDirectory);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+
+            this.store = new FilePartStore(partsDirectory);
+            this.index = Optional.of(new PartIndex(dataDirectory.resolve(INDEX_FILE), partsDirectory));
+        } else {
+            this.store = new TieredPartStore(new MemoryPartStore(storeProperties.getHeapMaxSize()),
+                    new SlabPartStore(storeProperties.getOffHeapMaxSize(), allocator),
+                    new FilePartStore(Paths.get(storeProperties.getDirectory())));
+            this.index = Optional.empty();
+        }
+
+        this.diffEngine = new ByteDiffEngine(diffProperties.getBufferSize(), diffProperties.getMmapThreshold(),
+                diffProperties.getMmapWindowSize());
+        this.parallelDiffEngine = new ParallelDiffEngine(diffProperties.getParallelism(),
+                diffProperties.getParallelChunkSize(), diffProperties.getBufferSize());
+        this.editEngine = new MyersEditEngine(diffProperties.getMaxEditCost());
+        this.shiftedEditEngine = new RollingHashEditEngine(diffProperties.getShiftBlockSize());
+        this.maxValueLength = diffProperties.getMaxValueLength();
+        this.maxDepth = diffProperties.getMaxDepth();
+        this.maxMatchedMembers = diffProperties.getMaxMatchedMembers();
+        this.parallelThreshold = diffProperties.getParallelThreshold();
+        this.bufferSize = diffProperties.getBufferSize();
+        this.blockSize = diffProperties.getBlockSize();
+        this.maxDifferentBlockRatio = diffProperties.getMaxDifferentBlockRatio();
+
+        // Entries are weighted by the bytes of their parts, so a burst of
+        // uploads can't take more memory or disk than the maximum weight.
+        // A single segment lets any entry use the whole weight, instead of
+        // the share of one segment among several.
+        CacheBuilder<Long, DiffObject> builder = CacheBuilder.newBuilder().concurrencyLevel(1)
+                .maximumWeight(cacheProperties.getMaxWeight())
+                .weigher((Long id, DiffObject diffObject) -> weigh(diffObject))
+                .expireAfterAccess(cacheProperties.getExpireAfterAccess(), TimeUnit.SECONDS)
+                .expireAfterWrite(cacheProperties.getTimeToLive(), TimeUnit.SECONDS)
                 .removalListener(notification -> {
-                    if (notification.getCause() == RemovalCause.EXPIRED) {
-                        try {
-                            deletePartFiles(notification.getValue());
-                        } catch (IOException ioe) {
-                            LOGGER.error("Error while trying to delete files for id: '{}'",
-                                    notification.getValue().getId(), ioe);
-                        }
+                    // Replacements put the same diffObject back, so only the
+                    // evicted ones, by expiration or by size, release parts.
+                    if (notification.wasEvicted()) {
+                        LOGGER.info("Evicting id: '{}' because of {}", notification.getKey(), notification.getCause());
+
+                        forget(notification.getValue());
+                        reclaimParts(notification.getValue());
                     }
                 });
 
         this.cache = builder.build();
 
+        if (index.isPresent()) {
+            recover(index.get(), cacheProperties.getTimeToLive());
+        }
+
+        // Results are weighted by the amount of differences they hold, so a
+        // few huge diffs can't take all the memory.
+        this.results = CacheBuilder.newBuilder().maximumWeight(diffProperties.getResultCacheMaxWeight())
+                .weigher((Long id, MemoizedDiff memoized) -> 1 + memoized.response.getLines().size()
+                        + memoized.response.getEdits().size())
+                .build();
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("cache-maintenance-%d").setDaemon(true).build());
+
+        maintenance.scheduleWithFixedDelay(() -> {
+            cache.cleanUp();
+            results.cleanUp();
+        }, cacheProperties.getCleanUpInterval(), cacheProperties.getCleanUpInterval(), TimeUnit.SECONDS);
+
         // Works just when gracefully shutdown is requested from Windows or
         // Linux.
         Runtime.getRuntime().addShutdownHook(cleanUpTask());
@@ -70,7 +245,16 @@ public class DiffService {
     /**
      * Method that checks if the provided diffObject parts have the same
      * content, different length, or if there is any difference to calculate,
-     * returning them.
+     * returning them. <br/>
+     * Parts whose digests, computed when they were uploaded, are equal are
+     * answered without reading them. Parts of different length are answered
+     * with the insertions, deletions and replacements that turn the left one
+     * into the right one. The rest are read just once, finding the differences
+     * and telling if they are equal in the same pass. <br/>
+     * The result is memoized until any of the parts changes, so asking again
+     * for the same diffObject doesn't perform the difference again. Concurrent
+     * requests for the same version of a diffObject wait for the one that is
+     * already performing the difference instead of doing it again.
      * 
      * @param diffObject
      *            a Object containing the files associated to the left and right
@@ -82,79 +266,509 @@ public class DiffService {
      *             to the diffObject.
      */
     public DiffResponseDTO makeDiff(final DiffObject diffObject) throws IOException {
-        File leftPartFile = diffObject.getLeftPart().get().toFile();
-        File rightPartFile = diffObject.getRightPart().get().toFile();
+        Long id = diffObject.getId();
+        long version = diffObject.getVersion();
+
+        MemoizedDiff memoized = results.getIfPresent(id);
+
+        if (memoized != null && memoized.version == version) {
+            return memoized.response;
+        }
+
+        InFlightDiff flight = new InFlightDiff(version);
+        InFlightDiff current = inFlight.compute(id,
+                (key, other) -> other != null && other.version == version ? other : flight);
+
+        if (current != flight) {
+            return await(current.future);
+        }
+
+        try {
+            // The previous flight may have finished after the first lookup.
+            memoized = results.getIfPresent(id);
 
-        boolean isTwoEqual = FileUtils.contentEquals(leftPartFile, rightPartFile);
+            DiffResponseDTO response = memoized != null && memoized.version == version ? memoized.response
+                    : computeDiff(diffObject);
+
+            results.put(id, new MemoizedDiff(version, response));
+            flight.future.complete(response);
+
+            return response;
+        } catch (IOException | RuntimeException e) {
+            flight.future.completeExceptionally(e);
+
+            throw e;
+        } finally {
+            inFlight.remove(id, flight);
+        }
+    }
+
+    /**
+     * Method that returns just a page of the differences of the provided
+     * diffObject, like {@link #makeDiff(DiffObject)} does for all of them.
+     * <br/>
+     * The page is taken from the memoized result when there is one for the
+     * current version. Otherwise, the block index of the parts is used to seek
+     * straight to the first line asked for, and the difference stops as soon
+     * as the page is full, so a page is never memoized. <br/>
+     * Parts of different size have no differences to page, so the response
+     * holds all the edits between them instead, like the full one.
+     * 
+     * @param diffObject
+     *            a Object containing the files associated to the left and right
+     *            sides to perform the difference.
+     * @param query
+     *            the page of the differences to return.
+     * @return a Response with the lines, offsets and length of the differences
+     *         of the page, along with the cursor of the next page, if there
+     *         are more differences.
+     * @throws IOException
+     *             if there is any problem trying to open the files associated
+     *             to the diffObject.
+     */
+    public DiffResponseDTO makeDiff(final DiffObject diffObject, final DiffQuery query) throws IOException {
+        if (query.isAll()) {
+            return makeDiff(diffObject);
+        }
 
         DiffResponseDTO response = new DiffResponseDTO();
+        DiffPage page = new DiffPage(query, response);
+
+        MemoizedDiff memoized = results.getIfPresent(diffObject.getId());
+
+        if (memoized != null && memoized.version == diffObject.getVersion()) {
+            for (LineDTO line : memoized.response.getLines()) {
+                if (page.isDone()) {
+                    break;
+                }
+
+                page.onDifference(line.getLine(), line.getOffset(), line.getLength());
+            }
 
-        if (isTwoEqual) {
-            response.setMessage("Data is exactly the same");
-        } else if (leftPartFile.length() != rightPartFile.length()) {
-            response.setMessage("Data is NOT the same size");
+            memoized.response.getEdits().forEach(response::addEdit);
+            response.setMessage(memoized.response.getMessage());
         } else {
-            processDiff(leftPartFile, rightPartFile, response);
+            response.setMessage(performDiff(diffObject, query, false, page));
+
+            if (NOT_SAME_SIZE_MESSAGE.equals(response.getMessage())) {
+                performEdits(diffObject, editEngine, (type, leftOffset, leftLength, rightOffset,
+                        rightLength) -> response.addEdit(new EditDTO(type.name(), leftOffset, leftLength,
+                                rightOffset, rightLength)));
+            }
         }
 
         return response;
     }
 
-    private void processDiff(final File leftPartFile, final File rightPartFile, final DiffResponseDTO response)
-            throws IOException {
-        // Given we don't know the size of the file in the file system, is more
-        // prudent to read line by line to avoid OOM or to blow up the stack.
-        LineIterator leftPartIt = FileUtils.lineIterator(leftPartFile, "UTF-8");
-        LineIterator rightPartIt = FileUtils.lineIterator(rightPartFile, "UTF-8");
+    /**
+     * Method that tells if the parts of the provided diffObject are equal, and
+     * where the first difference is when they are not, stopping the
+     * difference as soon as it is found. <br/>
+     * Like {@link #makeDiff(DiffObject)}, it doesn't read the parts when their
+     * lengths or digests already tell if they are equal, reads just the blocks
+     * that differ until the first one, and takes the answer from the memoized
+     * result when there is one.
+     * 
+     * @param diffObject
+     *            a Object containing the files associated to the left and right
+     *            sides to perform the difference.
+     * @return a Summary saying if the parts are equal, and the line, offset
+     *         and length of the first difference if they are not.
+     * @throws IOException
+     *             if there is any problem trying to open the files associated
+     *             to the diffObject.
+     */
+    public DiffSummaryDTO summarize(final DiffObject diffObject) throws IOException {
+        DiffSummaryDTO summary = new DiffSummaryDTO();
+        MemoizedDiff memoized = results.getIfPresent(diffObject.getId());
+
+        if (memoized != null && memoized.version == diffObject.getVersion()) {
+            summary.setMessage(memoized.response.getMessage());
+
+            if (!memoized.response.getLines().isEmpty()) {
+                summary.setFirstDifference(memoized.response.getLines().get(0));
+            }
+        } else {
+            summary.setMessage(performDiff(diffObject, DiffQuery.ALL, false, new DiffListener() {
+                @Override
+                public void onDifference(final long line, final long offset, final long length) {
+                    if (summary.getFirstDifference() == null) {
+                        summary.setFirstDifference(new LineDTO(line, offset, length));
+                    }
+                }
+
+                @Override
+                public boolean isDone() {
+                    return summary.getFirstDifference() != null;
+                }
+            }));
+        }
+
+        summary.setEqual(SAME_CONTENT_MESSAGE.equals(summary.getMessage()));
+
+        return summary;
+    }
+
+    /**
+     * Method that describes the right part of the provided diffObject as
+     * copies of regions of the left one and inserted bytes, finding the
+     * content that was shifted or moved, of any size. <br/>
+     * Like {@link #makeDiff(DiffObject)}, it doesn't read the parts when their
+     * digests already tell they are equal, but the result is not memoized.
+     * 
+     * @param diffObject
+     *            a Object containing the files associated to the left and right
+     *            sides to perform the difference.
+     * @return a Response with the copies and insertions that build the right
+     *         part.
+     * @throws IOException
+     *             if there is any problem trying to open the files associated
+     *             to the diffObject.
+     */
+    public DiffResponseDTO makeShiftedDiff(final DiffObject diffObject) throws IOException {
+        return withSides(diffObject, (left, right) -> {
+            if (sameContent(left, right)) {
+                return new DiffResponseDTO(SAME_CONTENT_MESSAGE);
+            }
+
+            DiffResponseDTO response = new DiffResponseDTO(DIFF_CALCULATED_MESSAGE);
+
+            performEdits(left, right, shiftedEditEngine, (type, leftOffset, leftLength, rightOffset,
+                    rightLength) -> response.addEdit(new EditDTO(type.name(), leftOffset, leftLength, rightOffset,
+                            rightLength)));
+
+            return response;
+        });
+    }
+
+    /**
+     * Method that compares the parts of the provided diffObject as JSON
+     * documents, telling the values added, removed or changed by their JSON
+     * Pointer, so reordered keys and reformatting are not differences. <br/>
+     * Like {@link #makeDiff(DiffObject)}, it doesn't read the parts when their
+     * digests already tell they are equal, but the result is not memoized.
+     * 
+     * @param diffObject
+     *            a Object containing the files associated to the left and right
+     *            sides to perform the difference.
+     * @return a Response with the path, and the old and new values, of every
+     *         change.
+     * @throws IOException
+     *             if there is any problem trying to open the files associated
+     *             to the diffObject, or if they are not JSON.
+     */
+    public DiffResponseDTO makeStructuralDiff(final DiffObject diffObject) throws IOException {
+        return makeStructuralDiff(diffObject, false, null);
+    }
+
+    /**
+     * Method that compares the parts of the provided diffObject as JSON
+     * documents, like {@link #makeStructuralDiff(DiffObject)} does, but
+     * matching the elements of the arrays regardless of their order, by the
+     * value at a key path or by their hash, so only the elements added,
+     * removed or changed are reported.
+     * 
+     * @param diffObject
+     *            a Object containing the files associated to the left and right
+     *            sides to perform the difference.
+     * @param unorderedArrays
+     *            if the elements of the arrays are matched regardless of their
+     *            order.
+     * @param arrayKey
+     *            the JSON Pointer, inside each element, of the value the
+     *            elements are matched by, or null to match them by their hash.
+     * @return a Response with the path, and the old and new values, of every
+     *         change.
+     * @throws IOException
+     *             if there is any problem trying to open the files associated
+     *             to the diffObject, or if they are not JSON.
+     * @throws IllegalArgumentException
+     *             if the key is not a JSON Pointer.
+     */
+    public DiffResponseDTO makeStructuralDiff(final DiffObject diffObject, final boolean unorderedArrays,
+            final String arrayKey) throws IOException {
+        StructuralDiffEngine engine = new StructuralDiffEngine(maxValueLength, maxDepth, maxMatchedMembers,
+                unorderedArrays, arrayKey);
+
+        return withSides(diffObject, (left, right) -> {
+            if (sameContent(left, right)) {
+                return new DiffResponseDTO(SAME_CONTENT_MESSAGE);
+            }
+
+            DiffResponseDTO response = new DiffResponseDTO();
+
+            try (PartReader leftReader = left.getPart().get().open();
+                    PartReader rightReader = right.getPart().get().open()) {
+                engine.diff(leftReader, rightReader, (type, path, oldValue, newValue) -> response
+                        .addChange(new ChangeDTO(type.name(), path, oldValue, newValue)));
+            }
+
+            response.setMessage(
+                    response.getChanges().isEmpty() ? STRUCTURALLY_SAME_MESSAGE : DIFF_CALCULATED_MESSAGE);
 
+            return response;
+        });
+    }
+
+    /**
+     * Tells if both parts are equal, by their digests when both are known.
+     */
+    private static boolean sameContent(final DiffSide left, final DiffSide right) throws IOException {
+        Optional<PartMetadata> leftMetadata = left.getMetadata();
+        Optional<PartMetadata> rightMetadata = right.getMetadata();
+
+        return leftMetadata.isPresent() && rightMetadata.isPresent()
+                ? leftMetadata.get().sameContentAs(rightMetadata.get())
+                : left.getPart().get().isSameAs(right.getPart().get());
+    }
+
+    private static DiffResponseDTO await(final CompletableFuture<DiffResponseDTO> future) throws IOException {
         try {
-            int line = 0;
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for the difference");
+        } catch (ExecutionException ee) {
+            Throwables.throwIfInstanceOf(ee.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(ee.getCause());
+
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
 
-            while (leftPartIt.hasNext() && rightPartIt.hasNext()) {
-                char[] leftCharArray = leftPartIt.nextLine().toCharArray();
-                char[] rightCharArray = rightPartIt.nextLine().toCharArray();
+    /**
+     * Performs the difference like {@link #makeDiff(DiffObject)} does, but
+     * writing the response as JSON into the given stream while the differences
+     * are found, instead of keeping them in memory until the end. <br/>
+     * A memoized result is written when there is one for the current version,
+     * but results streamed are never memoized, since they can be as big as
+     * the parts.
+     * 
+     * @param diffObject
+     *            a Object containing the files associated to the left and right
+     *            sides to perform the difference.
+     * @param out
+     *            the stream where the response is written.
+     * @throws IOException
+     *             if there is any problem trying to open the files associated
+     *             to the diffObject, or to write the response.
+     */
+    public void streamDiff(final DiffObject diffObject, final OutputStream out) throws IOException {
+        MemoizedDiff memoized = results.getIfPresent(diffObject.getId());
 
-                int lineSize = leftCharArray.length;
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            if (memoized != null && memoized.version == diffObject.getVersion()) {
+                generator.writeObject(memoized.response);
+                return;
+            }
 
-                int offsetStart = 0;
-                int offsetSize = 1;
-                boolean offsetSet = false;
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("lines");
 
-                for (int j = 0; j < lineSize; j++) {
-                    if (leftCharArray[j] != rightCharArray[j]) {
-                        if (!offsetSet) {
-                            offsetStart = j;
-                            offsetSet = true;
-                        } else {
-                            offsetSize++;
-                        }
+            String message = performDiff(diffObject, DiffQuery.ALL, false, (line, offset, length) -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeNumberField("line", line);
+                    generator.writeNumberField("offset", offset);
+                    generator.writeNumberField("length", length);
+                    generator.writeEndObject();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
 
-                        if (j == lineSize - 1) {
-                            response.addLine(line, offsetStart, offsetSize);
+            generator.writeEndArray();
 
-                            offsetSet = false;
-                            offsetSize = 1;
-                            offsetStart = 0;
-                        }
-                    } else {
-                        if (offsetSet) {
-                            response.addLine(line, offsetStart, offsetSize);
+            if (NOT_SAME_SIZE_MESSAGE.equals(message)) {
+                generator.writeArrayFieldStart("edits");
 
-                            offsetSet = false;
-                            offsetSize = 1;
-                            offsetStart = 0;
-                        }
+                performEdits(diffObject, editEngine, (type, leftOffset, leftLength, rightOffset, rightLength) -> {
+                    try {
+                        generator.writeStartObject();
+                        generator.writeStringField("type", type.name());
+                        generator.writeNumberField("leftOffset", leftOffset);
+                        generator.writeNumberField("leftLength", leftLength);
+                        generator.writeNumberField("rightOffset", rightOffset);
+                        generator.writeNumberField("rightLength", rightLength);
+                        generator.writeEndObject();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
                     }
+                });
+
+                generator.writeEndArray();
+            }
+
+            generator.writeStringField("message", message);
+            generator.writeBooleanField("truncated", false);
+            generator.writeEndObject();
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    private DiffResponseDTO computeDiff(final DiffObject diffObject) throws IOException {
+        DiffResponseDTO response = new DiffResponseDTO();
+
+        response.setMessage(performDiff(diffObject, DiffQuery.ALL, true, response::addLine));
+
+        if (NOT_SAME_SIZE_MESSAGE.equals(response.getMessage())) {
+            performEdits(diffObject, editEngine, (type, leftOffset, leftLength, rightOffset, rightLength) -> response
+                    .addEdit(new EditDTO(type.name(), leftOffset, leftLength, rightOffset, rightLength)));
+        }
+
+        return response;
+    }
+
+    /**
+     * Notifies the edits found by the given engine between the left part and
+     * the right one to the listener.
+     */
+    private static void performEdits(final DiffObject diffObject, final EditEngine engine,
+            final EditListener listener) throws IOException {
+        withSides(diffObject, (left, right) -> {
+            performEdits(left, right, engine, listener);
+
+            return null;
+        });
+    }
+
+    private static void performEdits(final DiffSide left, final DiffSide right, final EditEngine engine,
+            final EditListener listener) throws IOException {
+        try (PartReader leftReader = left.getPart().get().open();
+                PartReader rightReader = right.getPart().get().open()) {
+            engine.diff(leftReader, rightReader, listener);
+        }
+    }
+
+    /**
+     * Notifies the differences between both parts to the listener, starting
+     * from the first line of the query when the parts can be seeked.
+     * 
+     * @return the message that describes the result.
+     */
+    private String performDiff(final DiffObject diffObject, final DiffQuery query, final boolean allowParallel,
+            final DiffListener listener) throws IOException {
+        // Each side is read once, so a part is never paired with the metadata
+        // of the part it replaced.
+        return withSides(diffObject, (left, right) -> performDiff(left, right, query, allowParallel, listener));
+    }
+
+    private String performDiff(final DiffSide left, final DiffSide right, final DiffQuery query,
+            final boolean allowParallel, final DiffListener listener) throws IOException {
+        Part leftPart = left.getPart().get();
+        Part rightPart = right.getPart().get();
+
+        Optional<PartMetadata> leftMetadata = left.getMetadata();
+        Optional<PartMetadata> rightMetadata = right.getMetadata();
+
+        long leftLength;
+        long rightLength;
+        boolean sameContent;
+
+        if (leftMetadata.isPresent() && rightMetadata.isPresent()) {
+            // Both digests were computed when the parts were uploaded.
+            leftLength = leftMetadata.get().getLength();
+            rightLength = rightMetadata.get().getLength();
+            sameContent = leftMetadata.get().sameContentAs(rightMetadata.get());
+        } else {
+            leftLength = leftPart.getLength();
+            rightLength = rightPart.getLength();
+            sameContent = leftPart.isSameAs(rightPart);
+        }
+
+        if (leftLength != rightLength) {
+            return NOT_SAME_SIZE_MESSAGE;
+        }
+
+        if (sameContent) {
+            return SAME_CONTENT_MESSAGE;
+        }
+
+        DiffEngine engine = selectEngine(leftMetadata, rightMetadata, allowParallel ? leftLength : 0, query);
+        long[] differences = new long[1];
+
+        try (PartReader leftReader = leftPart.open(); PartReader rightReader = rightPart.open()) {
+            engine.diff(leftReader, rightReader, new DiffListener() {
+                @Override
+                public void onDifference(final long line, final long offset, final long length) {
+                    differences[0]++;
+
+                    listener.onDifference(line, offset, length);
+                }
+
+                @Override
+                public boolean isDone() {
+                    return listener.isDone();
+                }
+            });
+        }
+
+        // Different digests already tell there are differences, even if the
+        // ones of the lines asked for were not reached.
+        boolean different = differences[0] > 0 || leftMetadata.isPresent() && rightMetadata.isPresent();
+
+        return different ? DIFF_CALCULATED_MESSAGE : SAME_CONTENT_MESSAGE;
+    }
+
+    /**
+     * Runs the given task with both sides of the diffObject. A part is only
+     * released once the diffs that opened it are done, but the ones that read
+     * it from the diffObject just before an upload replaced it could still
+     * find it released when opening it; the task then runs again with the
+     * parts that replaced it. A part released while still in the diffObject,
+     * because it was evicted, fails as before.
+     */
+    private static <T> T withSides(final DiffObject diffObject, final SidesTask<T> task) throws IOException {
+        while (true) {
+            long version = diffObject.getVersion();
+
+            try {
+                return task.run(diffObject.getLeft(), diffObject.getRight());
+            } catch (PartReleasedException pre) {
+                if (diffObject.getVersion() == version) {
+                    throw pre;
                 }
 
-                line++;
+                LOGGER.debug("Part of id: '{}' was replaced before it was opened, reading it again",
+                        diffObject.getId());
             }
-        } finally {
-            LineIterator.closeQuietly(leftPartIt);
-            LineIterator.closeQuietly(rightPartIt);
         }
+    }
+
+    /**
+     * Chooses how to compare the parts: only the blocks that differ when both
+     * of them have comparable block indexes, and either the query seeks to a
+     * range of lines or few blocks differ, or else every byte, in parallel for
+     * big parts. <br/>
+     * When most blocks differ, skipping the rest saves little, while the
+     * engines that compare every byte map big parts and split them in chunks
+     * scanned at once. <br/>
+     * The parallel engine keeps the differences of every chunk until all of
+     * them are done, so it is not used when the length is unknown.
+     */
+    private DiffEngine selectEngine(final Optional<PartMetadata> leftMetadata,
+            final Optional<PartMetadata> rightMetadata, final long length, final DiffQuery query) {
+        if (leftMetadata.isPresent() && rightMetadata.isPresent()) {
+            Optional<BlockIndex> leftIndex = leftMetadata.get().getBlockIndex();
+            Optional<BlockIndex> rightIndex = rightMetadata.get().getBlockIndex();
+
+            if (leftIndex.isPresent() && rightIndex.isPresent()
+                    && leftIndex.get().isComparableWith(rightIndex.get())
+                    && (query.getFromLine() > 0 || query.getToLine() < Long.MAX_VALUE
+                            || fewBlocksDiffer(leftIndex.get(), rightIndex.get()))) {
+                return new BlockIndexDiffEngine(leftIndex.get(), rightIndex.get(), bufferSize, query.getFromLine(),
+                        query.getToLine());
+            }
+        }
+
+        return length >= parallelThreshold ? parallelDiffEngine : diffEngine;
+    }
 
-        response.setMessage("Diff successfully calculated");
+    private boolean fewBlocksDiffer(final BlockIndex leftIndex, final BlockIndex rightIndex) {
+        return leftIndex.differentBlocks(rightIndex).cardinality() <= leftIndex.getBlocks() * maxDifferentBlockRatio;
     }
 
     /**
@@ -169,71 +783,233 @@ public class DiffService {
     }
 
     /**
-     * Adds a new diffObject in memory that holds the files associated to the
-     * left and right side to perform the differences, but not the content by
-     * themselves (In order to don't keep them in memory)).
+     * Adds a new diffObject in memory that holds the parts associated to the
+     * left and right side to perform the differences, kept by the store in
+     * the heap, off the heap or in a file depending on their size. <br/>
+     * The request body is never fully buffered: the "binary" field is located
+     * with a streaming parser and its base64 content is decoded straight into
+     * the part, so the memory used per upload doesn't depend on its size.
      * 
      * @param diffObject
      *            a Object containing the files associated to the left and right
      *            sides to perform the difference.
      * @param data
-     *            the data to be stored in the given part or side.
+     *            a stream with the JSON request holding the base64 encoded data
+     *            to be stored in the given part or side.
      * @param leftPart
      *            if this data belongs to the left or right side.
-     * @return a URI pointing where the file with the data was created.
+     * @return a URI pointing where the part with the data was created.
      * @throws IOException
-     *             if there is any problem trying to access to the files
-     *             associated to the diffObject.
+     *             if the request is not a valid JSON with a "binary" field, or
+     *             if there is any problem trying to write the part.
      */
-    public URI addNewDiff(final DiffObject diffObject, final String data, final boolean leftPart) throws IOException {
-        JSONBinaryRequest bean = MAPPER.readValue(data, JSONBinaryRequest.class);
+    public URI addNewDiff(final DiffObject diffObject, final InputStream data, final boolean leftPart)
+            throws IOException {
+        return addPart(diffObject, leftPart, (output, metadata) -> {
+            try (JsonParser parser = MAPPER.getFactory().createParser(data)) {
+                // Only flushed, since closing it would close the output before its commit.
+                OutputStream out = metadata
+                        .observe(new BufferedOutputStream(Channels.newOutputStream(output), BUFFER_SIZE));
+
+                moveToBinaryValue(parser);
+
+                parser.readBinaryValue(out);
+                out.flush();
+            }
+        });
+    }
+
+    /**
+     * Adds a new diffObject in memory like
+     * {@link #addNewDiff(DiffObject, InputStream, boolean)} does, but taking
+     * the raw bytes of the part instead of a JSON with them base64 encoded.
+     * <br/>
+     * The stream is transferred into the part without any decoding.
+     * 
+     * @param diffObject
+     *            a Object containing the files associated to the left and right
+     *            sides to perform the difference.
+     * @param data
+     *            a stream with the raw data to be stored in the given part or
+     *            side.
+     * @param leftPart
+     *            if this data belongs to the left or right side.
+     * @return a URI pointing where the part with the data was created.
+     * @throws IOException
+     *             if there is any problem trying to write the part.
+     */
+    public URI addNewRawDiff(final DiffObject diffObject, final InputStream data, final boolean leftPart)
+            throws IOException {
+        return addPart(diffObject, leftPart,
+                (output, metadata) -> output.transferFrom(metadata.observe(Channels.newChannel(data)), Long.MAX_VALUE));
+    }
 
-        URI uri = null;
+    private URI addPart(final DiffObject diffObject, final boolean leftPart, final PartWriter writer)
+            throws IOException {
+        PartMetadataBuilder builder = new PartMetadataBuilder(blockSize);
+        Part part = writeData(writer, builder);
+        PartMetadata metadata = builder.build();
+
+        if (index.isPresent()) {
+            try {
+                index.get().put(diffObject.getId(), leftPart, part, metadata);
+            } catch (IOException | RuntimeException e) {
+                // A part the index doesn't know about would be lost on restart.
+                part.release();
+
+                throw e;
+            }
+        }
+
+        Optional<Part> previous = leftPart ? diffObject.getLeftPart() : diffObject.getRightPart();
 
         if (leftPart) {
-            diffObject.setLeftPart(writeData(bean.getBinary(), diffObject.getLeftPart()));
-            uri = diffObject.getLeftPart().get().toUri();
+            diffObject.setLeft(Optional.of(part), Optional.of(metadata));
         } else {
-            diffObject.setRightPart(writeData(bean.getBinary(), diffObject.getRightPart()));
-            uri = diffObject.getRightPart().get().toUri();
+            diffObject.setRight(Optional.of(part), Optional.of(metadata));
         }
 
         cache.put(diffObject.getId(), diffObject);
+        results.invalidate(diffObject.getId());
+
+        // The diffs still reading the previous part keep it until they are
+        // done, the ones about to open it read the new one instead.
+        if (previous.isPresent()) {
+            reaper.reclaim(previous.get());
+        }
+
+        return part.getUri();
+    }
+
+    /**
+     * Writes a new part with the given writer, computing its digest, length
+     * and block index on the way, so later comparisons can tell if parts are
+     * equal or where they differ without reading them.
+     */
+    private Part writeData(final PartWriter writer, final PartMetadataBuilder metadata) throws IOException {
+        // The part only exists once the whole request was read, so a broken
+        // upload never replaces the previous part with a truncated one.
+        try (PartOutput output = store.create()) {
+            writer.write(output, metadata);
+
+            // Counted, so a replaced part is not released while it is read.
+            return new SharedPart(output.commit());
+        }
+    }
+
+    /**
+     * Advances the parser until the value of the top level "binary" field,
+     * skipping any other field without reading it into memory.
+     */
+    private void moveToBinaryValue(final JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonMappingException(parser, "Request must be a JSON object");
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (BINARY_FIELD.equals(fieldName)) {
+                if (value != JsonToken.VALUE_STRING) {
+                    throw new JsonMappingException(parser, "Field '" + BINARY_FIELD + "' must be a base64 string");
+                }
+
+                return;
+            }
+
+            parser.skipChildren();
+        }
+
+        throw new JsonMappingException(parser, "Missing '" + BINARY_FIELD + "' field in request");
+    }
+
+    /**
+     * Weighs a diffObject by the bytes of its parts, up to the maximum weight
+     * an entry of the cache can have.
+     */
+    private static int weigh(final DiffObject diffObject) {
+        long bytes = 0;
+
+        if (diffObject.getLeftPart().isPresent()) {
+            bytes += diffObject.getLeftPart().get().getLength();
+        }
+
+        if (diffObject.getRightPart().isPresent()) {
+            bytes += diffObject.getRightPart().get().getLength();
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
 
-        return uri;
+    /**
+     * Puts in the cache the diffObjects recorded in the index, without reading
+     * their parts. The ones whose last upload is older than the time to live
+     * are left out, as if they had expired while the service was down.
+     */
+    private void recover(final PartIndex partIndex, final long timeToLive) {
+        try {
+            Map<Long, DiffObject> recovered = partIndex
+                    .recover(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(timeToLive));
+
+            cache.putAll(recovered);
+
+            LOGGER.info("Recovered {} diffs from the index", recovered.size());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
     }
 
-    private Optional<Path> writeData(final byte[] data, final Optional<Path> part) throws IOException {
-        if (part.isPresent()) {
-            return Optional.of(Files.write(part.get(), data, StandardOpenOption.CREATE));
+    /**
+     * Records in the index, if any, that the parts of the given diffObject are
+     * gone, so they are not recovered on restart. The parts uploaded for the
+     * same id after it was evicted are kept.
+     */
+    private void forget(final DiffObject diffObject) {
+        if (index.isPresent()) {
+            List<Part> parts = new ArrayList<>(2);
+            diffObject.getLeftPart().ifPresent(parts::add);
+            diffObject.getRightPart().ifPresent(parts::add);
+
+            try {
+                index.get().remove(diffObject.getId(), parts);
+            } catch (IOException ioe) {
+                LOGGER.error("Error while trying to remove id: '{}' from the index", diffObject.getId(), ioe);
+            }
         }
+    }
 
-        return Optional.of(Files.write(Paths.get(FileUtils.getTempDirectoryPath(), UUID.randomUUID().toString()), data,
-                StandardOpenOption.CREATE));
+    /**
+     * Queues the parts of the given diffObject to be released in the
+     * background.
+     */
+    private void reclaimParts(final DiffObject diffObject) {
+        diffObject.getLeftPart().ifPresent(reaper::reclaim);
+        diffObject.getRightPart().ifPresent(reaper::reclaim);
     }
 
-    private void deletePartFiles(final DiffObject diffObject) throws IOException {
-        Optional<Path> leftPart = diffObject.getLeftPart();
-        Optional<Path> rightPart = diffObject.getRightPart();
+    private void releaseParts(final DiffObject diffObject) throws IOException {
+        Optional<Part> leftPart = diffObject.getLeftPart();
+        Optional<Part> rightPart = diffObject.getRightPart();
 
         if (leftPart.isPresent()) {
-            FileUtils.forceDelete(leftPart.get().toFile());
+            leftPart.get().release();
 
-            LOGGER.info("Auto Removing for expiration, left file: '{}' for id: '{}' ",
-                    leftPart.get().toFile().getAbsolutePath(), diffObject.getId());
+            LOGGER.info("Released left part: '{}' for id: '{}' ", leftPart.get().getUri(),
+                    diffObject.getId());
         }
 
         if (rightPart.isPresent()) {
-            FileUtils.forceDelete(rightPart.get().toFile());
+            rightPart.get().release();
 
-            LOGGER.info("Auto Removing for expiration, right file: '{}' for id: '{}' ",
-                    rightPart.get().toFile().getAbsolutePath(), diffObject.getId());
+            LOGGER.info("Released right part: '{}' for id: '{}' ", rightPart.get().getUri(),
+                    diffObject.getId());
         }
     }
 
     /**
-     * Method that runs when the JVM is asked to shutdown, and perform files
-     * cleaning.
+     * Method that runs when the JVM is asked to shutdown, and releases the
+     * parts.
      * 
      * @return a Thread thats is in charge of perform the task.
      */
@@ -241,18 +1017,77 @@ public class DiffService {
         return new Thread() {
             @Override
             public void run() {
-                LOGGER.info("Shutdown application, deleting temp files...");
+                LOGGER.info("Shutdown application, releasing parts...");
 
-                Stream.of(cache.asMap().values()).forEach(x -> x.stream().forEach(y -> {
+                maintenance.shutdown();
+
+                if (index.isPresent()) {
+                    // Parts are kept for the next start, which recovers them
+                    // from the index.
                     try {
-                        deletePartFiles(y);
+                        index.get().close();
                     } catch (IOException e) {
-                        LOGGER.error("Failed to remove files for '{}'", y);
+                        LOGGER.error("Failed to close the index", e);
                     }
-                }));
+                } else {
+                    Stream.of(cache.asMap().values()).forEach(x -> x.stream().forEach(y -> {
+                        try {
+                            releaseParts(y);
+                        } catch (IOException e) {
+                            LOGGER.error("Failed to release parts for '{}'", y);
+                        }
+                    }));
+
+                    cache.invalidateAll();
+                }
 
-                cache.invalidateAll();
+                // Parts replaced by newer uploads may still be waiting.
+                reaper.flush();
             }
         };
     }
+
+    /**
+     * Result of a difference, along with the version of the diffObject it was
+     * computed for.
+     */
+    private static class MemoizedDiff {
+        private final long version;
+        private final DiffResponseDTO response;
+
+        MemoizedDiff(final long version, final DiffResponseDTO response) {
+            this.version = version;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Difference being performed for a version of a diffObject, that other
+     * requests can wait for.
+     */
+    private static class InFlightDiff {
+        private final long version;
+        private final CompletableFuture<DiffResponseDTO> future = new CompletableFuture<>();
+
+        InFlightDiff(final long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Strategy used to fill a part with the content of a request, letting the
+     * metadata builder observe every byte written.
+     */
+    @FunctionalInterface
+    private interface PartWriter {
+        void write(PartOutput output, PartMetadataBuilder metadata) throws IOException;
+    }
+
+    /**
+     * Work done with both sides of a diffObject, read at the same time.
+     */
+    @FunctionalInterface
+    private interface SidesTask<T> {
+        T run(DiffSide left, DiffSide right) throws IOException;
+    }
 }
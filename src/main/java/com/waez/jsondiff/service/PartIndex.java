@@ -0,0 +1,344 @@
+package com.waez.jsondiff.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.BaseEncoding;
+import com.waez.jsondiff.model.DiffObject;
+import com.waez.jsondiff.model.PartMetadata;
+import com.waez.jsondiff.store.FilePart;
+import com.waez.jsondiff.store.Part;
+import com.waez.jsondiff.store.SharedPart;
+
+/**
+ * Append-only index of the parts kept in the files of a data directory, so
+ * the diffs survive a restart. <br/>
+ * Every upload appends a record with the id, the side, the file, the length,
+ * the digest and the time of the part, and every eviction appends a record
+ * that removes the parts it evicted. On startup the records are read in a single streaming
+ * pass, the last one of each side wins, and the diffs are rebuilt from them
+ * without reading the files of the parts. The index is then rewritten with
+ * just the live records, and the files no record points to are deleted.
+ *
+ * @author Damian
+ */
+public class PartIndex implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartIndex.class);
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+    private static final String SEPARATOR = "\t";
+    private static final String PUT = "PUT";
+    private static final String REMOVE = "DEL";
+    private static final String LEFT = "LEFT";
+    private static final String RIGHT = "RIGHT";
+
+    private final Path file;
+    private final Path partsDirectory;
+    private Writer writer;
+
+    /**
+     * Creates an index kept in the given file, for parts kept in the given
+     * directory.
+     *
+     * @param file
+     *            the file of the index, created if it doesn't exist.
+     * @param partsDirectory
+     *            the directory of the files of the parts.
+     */
+    public PartIndex(final Path file, final Path partsDirectory) {
+        this.file = file;
+        this.partsDirectory = partsDirectory;
+    }
+
+    /**
+     * Rebuilds the diffs from the index, compacts it, and opens it to append
+     * new records.
+     *
+     * @param notBefore
+     *            the time in milliseconds before which records are considered
+     *            expired, so their diffs are not rebuilt.
+     * @return the diffs rebuilt, by id.
+     * @throws IOException
+     *             if the index could not be read or rewritten.
+     */
+    public synchronized Map<Long, DiffObject> recover(final long notBefore) throws IOException {
+        Map<Long, Record[]> live = new HashMap<>();
+
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    apply(line, live);
+                }
+            }
+        }
+
+        Map<Long, DiffObject> recovered = new HashMap<>();
+        List<Record> kept = new ArrayList<>();
+        Set<Path> referenced = new HashSet<>();
+
+        for (Record[] sides : live.values()) {
+            // A diff expires counting from the last upload of any of its sides.
+            if (Math.max(timestampOf(sides[0]), timestampOf(sides[1])) < notBefore) {
+                continue;
+            }
+
+            DiffObject diffObject = null;
+
+            for (Record record : sides) {
+                if (record == null) {
+                    continue;
+                }
+
+                Path path = partsDirectory.resolve(record.fileName);
+
+                // Only the attributes of the file are checked, never its content.
+                if (!Files.isRegularFile(path) || Files.size(path) != record.length) {
+                    LOGGER.warn("Skipping part: '{}' for id: '{}', its file is missing or truncated", path,
+                            record.id);
+                    continue;
+                }
+
+                if (diffObject == null) {
+                    diffObject = new DiffObject(record.id);
+                }
+
+                Optional<Part> part = Optional.of(new SharedPart(new FilePart(path, record.length)));
+                Optional<PartMetadata> metadata = Optional.of(new PartMetadata(record.length, record.digest));
+
+                if (record.left) {
+                    diffObject.setLeft(part, metadata);
+                } else {
+                    diffObject.setRight(part, metadata);
+                }
+
+                kept.add(record);
+                referenced.add(path.getFileName());
+            }
+
+            if (diffObject != null) {
+                recovered.put(diffObject.getId(), diffObject);
+            }
+        }
+
+        compact(kept);
+        deleteUnreferenced(referenced);
+
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+
+        return recovered;
+    }
+
+    /**
+     * Records that the given side of a diff is now the given part.
+     *
+     * @param id
+     *            the id of the diff.
+     * @param left
+     *            if the part is the left side.
+     * @param part
+     *            the part, kept in a file of the parts directory.
+     * @param metadata
+     *            the metadata of the part.
+     * @throws IOException
+     *             if the record could not be appended.
+     */
+    public synchronized void put(final long id, final boolean left, final Part part, final PartMetadata metadata)
+            throws IOException {
+        append(format(id, left, fileNameOf(part), metadata.getLength(), metadata.getDigest(),
+                System.currentTimeMillis()));
+    }
+
+    /**
+     * Records that the given parts of the diff with the given id don't exist
+     * anymore. <br/>
+     * The record names the files of the parts, so it never removes the parts
+     * uploaded for the same id after them, even if it is appended later.
+     *
+     * @param id
+     *            the id of the diff.
+     * @param parts
+     *            the parts of the diff, kept in files of the parts directory.
+     * @throws IOException
+     *             if the record could not be appended.
+     */
+    public synchronized void remove(final long id, final Collection<Part> parts) throws IOException {
+        if (parts.isEmpty()) {
+            return;
+        }
+
+        List<String> fields = new ArrayList<>();
+        fields.add(REMOVE);
+        fields.add(Long.toString(System.currentTimeMillis()));
+        fields.add(Long.toString(id));
+
+        for (Part part : parts) {
+            fields.add(fileNameOf(part));
+        }
+
+        append(String.join(SEPARATOR, fields));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void append(final String record) throws IOException {
+        if (writer == null) {
+            throw new IOException("Index " + file + " is not open");
+        }
+
+        // Flushed on every record, so a crash loses at most the one being written.
+        writer.write(record);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * Applies a record of the index to the live parts. A malformed record,
+     * like the last one of an index that was being written when the process
+     * died, is skipped.
+     */
+    private static void apply(final String line, final Map<Long, Record[]> live) {
+        String[] fields = line.split(SEPARATOR, -1);
+
+        try {
+            if (fields.length == 7 && PUT.equals(fields[0])) {
+                Record record = new Record(Long.parseLong(fields[2]), LEFT.equals(fields[3]), fields[4],
+                        Long.parseLong(fields[5]), HEX.decode(fields[6]), Long.parseLong(fields[1]));
+
+                live.computeIfAbsent(record.id, id -> new Record[2])[record.left ? 0 : 1] = record;
+                return;
+            }
+
+            if (fields.length >= 3 && REMOVE.equals(fields[0])) {
+                remove(Long.parseLong(fields[2]), Arrays.asList(fields).subList(3, fields.length), live);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            // Reported below, like any other malformed record.
+        }
+
+        LOGGER.warn("Skipping malformed index record: '{}'", line);
+    }
+
+    /**
+     * Removes the sides of the diff with the given id kept in the given files,
+     * and the diff itself once none of its sides is left. A record without
+     * files, as written by previous versions, removes the whole diff.
+     */
+    private static void remove(final long id, final List<String> fileNames, final Map<Long, Record[]> live) {
+        Record[] sides = live.get(id);
+
+        if (sides == null) {
+            return;
+        }
+
+        for (int i = 0; i < sides.length; i++) {
+            if (sides[i] != null && (fileNames.isEmpty() || fileNames.contains(sides[i].fileName))) {
+                sides[i] = null;
+            }
+        }
+
+        if (sides[0] == null && sides[1] == null) {
+            live.remove(id);
+        }
+    }
+
+    /**
+     * Rewrites the index with only the given records, replacing the old one at
+     * once so a crash in between never loses it.
+     */
+    private void compact(final List<Record> kept) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+
+        try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Record record : kept) {
+                out.write(format(record.id, record.left, record.fileName, record.length, record.digest,
+                        record.timestamp));
+                out.write('\n');
+            }
+        }
+
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the files of the parts directory no record points to, left by
+     * uploads that never finished or by parts released after the last record.
+     */
+    private void deleteUnreferenced(final Set<Path> referenced) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(partsDirectory)) {
+            for (Path path : files) {
+                if (!referenced.contains(path.getFileName())) {
+                    LOGGER.info("Deleting unreferenced part: '{}'", path);
+
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static String fileNameOf(final Part part) {
+        return Paths.get(part.getUri()).getFileName().toString();
+    }
+
+    private static long timestampOf(final Record record) {
+        return record == null ? Long.MIN_VALUE : record.timestamp;
+    }
+
+    private static String format(final long id, final boolean left, final String fileName, final long length,
+            final byte[] digest, final long timestamp) {
+        return String.join(SEPARATOR, PUT, Long.toString(timestamp), Long.toString(id), left ? LEFT : RIGHT,
+                fileName, Long.toString(length), HEX.encode(digest));
+    }
+
+    /**
+     * A part as it was recorded in the index.
+     */
+    private static class Record {
+        private final long id;
+        private final boolean left;
+        private final String fileName;
+        private final long length;
+        private final byte[] digest;
+        private final long timestamp;
+
+        Record(final long id, final boolean left, final String fileName, final long length, final byte[] digest,
+                final long timestamp) {
+            this.id = id;
+            this.left = left;
+            this.fileName = fileName;
+            this.length = length;
+            this.digest = digest;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.waez.jsondiff.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.waez.jsondiff.engine.BlockIndexBuilder;
+import com.waez.jsondiff.model.PartMetadata;
+
+/**
+ * Computes the {@link PartMetadata} of a part while it is being written,
+ * observing the bytes on their way to the part file through the streams and
+ * channels it decorates.
+ * 
+ * @author Damian
+ */
+class PartMetadataBuilder {
+    private static final int SCRATCH_SIZE = 8 * 1024;
+
+    private final MessageDigest digest;
+    private final BlockIndexBuilder blockIndex;
+
+    private long length;
+    private byte[] scratch;
+
+    PartMetadataBuilder(final int blockSize) {
+        try {
+            this.digest = MessageDigest.getInstance(PartMetadata.DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException nsae) {
+            // Every JVM is required to support it.
+            throw new IllegalStateException(nsae);
+        }
+
+        this.blockIndex = new BlockIndexBuilder(blockSize);
+    }
+
+    void update(final byte[] bytes, final int offset, final int count) {
+        digest.update(bytes, offset, count);
+        blockIndex.update(bytes, offset, count);
+
+        length += count;
+    }
+
+    void update(final ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            update(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            return;
+        }
+
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+
+        ByteBuffer source = bytes.duplicate();
+
+        while (source.hasRemaining()) {
+            int count = Math.min(scratch.length, source.remaining());
+
+            source.get(scratch, 0, count);
+
+            update(scratch, 0, count);
+        }
+    }
+
+    PartMetadata build() {
+        return new PartMetadata(length, digest.digest(), blockIndex.build());
+    }
+
+    /**
+     * @return a stream that observes every byte written before passing it to
+     *         the given one.
+     */
+    OutputStream observe(final OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(final int b) throws IOException {
+                out.write(b);
+
+                update(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+
+                update(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * @return a channel that observes every byte read from the given one.
+     */
+    ReadableByteChannel observe(final ReadableByteChannel channel) {
+        return new ReadableByteChannel() {
+            @Override
+            public int read(final ByteBuffer dst) throws IOException {
+                int start = dst.position();
+                int read = channel.read(dst);
+
+                if (read > 0) {
+                    ByteBuffer readBytes = dst.duplicate();
+                    readBytes.limit(start + read).position(start);
+
+                    update(readBytes);
+                }
+
+                return read;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,165 @@
+package com.waez.jsondiff.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.waez.jsondiff.config.DiffProperties;
+import com.waez.jsondiff.store.Part;
+
+/**
+ * Class that releases the parts no longer used in a background thread, so
+ * neither the requests nor the maintenance of the cache, which runs on
+ * whatever request thread touches it, wait for files to be deleted. <br/>
+ * Parts are released in batches, and the ones that fail are retried in the
+ * next batches up to a maximum amount of attempts. The backlog and the
+ * outcome of the releases are exposed through JMX.
+ *
+ * @author Damian
+ */
+@Component
+@ManagedResource(objectName = "com.waez.jsondiff:type=PartReaper",
+        description = "Releases unused parts in the background")
+public class PartReaper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartReaper.class);
+
+    private final BlockingQueue<Reclaim> backlog = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService executor;
+    private final int batchSize;
+    private final int maxAttempts;
+
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Creates a reaper that releases the parts every few milliseconds, as
+     * configured in the given properties.
+     *
+     * @param properties
+     *            the settings of the reaper.
+     */
+    @Autowired
+    public PartReaper(final DiffProperties properties) {
+        DiffProperties.Reaper reaperProperties = properties.getReaper();
+
+        this.batchSize = reaperProperties.getBatchSize();
+        this.maxAttempts = reaperProperties.getMaxAttempts();
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("part-reaper-%d").setDaemon(true).build());
+
+        executor.scheduleWithFixedDelay(this::reap, reaperProperties.getInterval(), reaperProperties.getInterval(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the given part to be released in the background.
+     *
+     * @param part
+     *            a part that is not going to be used anymore.
+     */
+    public void reclaim(final Part part) {
+        backlog.add(new Reclaim(part));
+    }
+
+    /**
+     * Releases every part in the backlog in the calling thread, retrying the
+     * ones that fail until they run out of attempts.
+     */
+    @ManagedOperation(description = "Releases every part in the backlog right away")
+    public void flush() {
+        while (!backlog.isEmpty()) {
+            reap();
+        }
+    }
+
+    /**
+     * Stops the background thread, releasing what is left in the backlog.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+
+        flush();
+    }
+
+    @ManagedAttribute(description = "Parts waiting to be released")
+    public int getBacklog() {
+        return backlog.size();
+    }
+
+    @ManagedAttribute(description = "Parts released")
+    public long getReleased() {
+        return released.get();
+    }
+
+    @ManagedAttribute(description = "Releases that failed and were retried")
+    public long getRetried() {
+        return retried.get();
+    }
+
+    @ManagedAttribute(description = "Parts that could not be released after every attempt")
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Releases one batch of parts. The ones that fail go back to the backlog
+     * once the batch is done, so they are not retried right away.
+     */
+    private void reap() {
+        List<Reclaim> batch = new ArrayList<>(batchSize);
+        List<Reclaim> retries = new ArrayList<>();
+
+        backlog.drainTo(batch, batchSize);
+
+        for (Reclaim reclaim : batch) {
+            try {
+                reclaim.part.release();
+
+                released.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                if (++reclaim.attempts < maxAttempts) {
+                    retried.incrementAndGet();
+                    retries.add(reclaim);
+                } else {
+                    failed.incrementAndGet();
+
+                    LOGGER.error("Giving up releasing part: '{}' after {} attempts", reclaim.part.getUri(),
+                            reclaim.attempts, e);
+                }
+            }
+        }
+
+        backlog.addAll(retries);
+    }
+
+    /**
+     * A part waiting to be released, along with the times it was tried.
+     */
+    private static class Reclaim {
+        private final Part part;
+        private int attempts;
+
+        Reclaim(final Part part) {
+            this.part = part;
+        }
+    }
+}
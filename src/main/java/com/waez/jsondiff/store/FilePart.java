@@ -0,0 +1,111 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Part whose content is kept in a file, so it can be as big as the disk
+ * allows.
+ * 
+ * @author Damian
+ */
+public class FilePart implements Part {
+    private final Path path;
+    private final long length;
+
+    /**
+     * Creates a part with the current content of the given file.
+     * 
+     * @param path
+     *            the file with the content of the part.
+     * @throws IOException
+     *             if the size of the file could not be read.
+     */
+    public FilePart(final Path path) throws IOException {
+        this(path, Files.size(path));
+    }
+
+    public FilePart(final Path path, final long length) {
+        this.path = path;
+        this.length = length;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public URI getUri() {
+        return path.toUri();
+    }
+
+    @Override
+    public PartReader open() throws IOException {
+        return new FilePartReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    @Override
+    public boolean isSameAs(final Part other) throws IOException {
+        return this == other || other instanceof FilePart && Files.isSameFile(path, ((FilePart) other).path);
+    }
+
+    @Override
+    public void release() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("FilePart [path=").append(path).append(", length=").append(length).append("]");
+        return builder.toString();
+    }
+
+    private static class FilePartReader implements PartReader {
+        private final FileChannel channel;
+
+        FilePartReader(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long size() {
+            try {
+                return channel.size();
+            } catch (IOException ioe) {
+                throw new IllegalStateException("Could not read the size of the part", ioe);
+            }
+        }
+
+        @Override
+        public int read(final ByteBuffer target, final long position) throws IOException {
+            return channel.read(target, position);
+        }
+
+        @Override
+        public ByteBuffer map(final long position, final int length) throws IOException {
+            return channel.map(MapMode.READ_ONLY, position, length);
+        }
+
+        @Override
+        public boolean isInMemory() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
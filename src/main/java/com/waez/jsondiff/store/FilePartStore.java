@@ -0,0 +1,112 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Store that keeps every part in its own file, inside a directory.
+ * 
+ * @author Damian
+ */
+public class FilePartStore implements PartStore {
+    private final Path directory;
+
+    /**
+     * Creates a store that keeps the parts in the given directory.
+     * 
+     * @param directory
+     *            the directory where the files of the parts are created.
+     */
+    public FilePartStore(final Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public long getMaxLength() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public PartOutput create() throws IOException {
+        Path path = directory.resolve(UUID.randomUUID().toString());
+
+        return new FilePartOutput(path, FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Output that writes straight into the file of the part, deleting it if
+     * the part is never committed.
+     */
+    private static class FilePartOutput implements PartOutput {
+        private final Path path;
+        private final FileChannel channel;
+
+        private boolean committed;
+
+        FilePartOutput(final Path path, final FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public long size() {
+            try {
+                return channel.position();
+            } catch (IOException ioe) {
+                throw new IllegalStateException("Could not read the size of the part", ioe);
+            }
+        }
+
+        @Override
+        public int write(final ByteBuffer source) throws IOException {
+            int length = source.remaining();
+
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+
+            return length;
+        }
+
+        @Override
+        public long transferFrom(final ReadableByteChannel source, final long count) throws IOException {
+            long position = channel.position();
+            long transferred = channel.transferFrom(source, position, count);
+
+            channel.position(position + transferred);
+
+            return transferred;
+        }
+
+        @Override
+        public Part commit() throws IOException {
+            long length = channel.position();
+
+            channel.close();
+            committed = true;
+
+            return new FilePart(path, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+
+            if (!committed) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
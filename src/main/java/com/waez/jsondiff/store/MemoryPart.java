@@ -0,0 +1,107 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Part whose content is kept in a buffer, either in the heap or off the heap,
+ * so reading it never touches the disk.
+ * 
+ * @author Damian
+ */
+public class MemoryPart implements Part {
+    private final ByteBuffer content;
+    private final URI uri;
+
+    /**
+     * Creates a part in the heap with the given content.
+     * 
+     * @param content
+     *            the bytes of the part, which are not copied.
+     */
+    public MemoryPart(final byte[] content) {
+        this(ByteBuffer.wrap(content));
+    }
+
+    /**
+     * Creates a part with the content between the position and the limit of
+     * the given buffer.
+     * 
+     * @param content
+     *            the buffer with the bytes of the part, which are not copied.
+     */
+    public MemoryPart(final ByteBuffer content) {
+        this.content = content.slice().asReadOnlyBuffer();
+        this.uri = URI.create((content.isDirect() ? "offheap:" : "heap:") + UUID.randomUUID());
+    }
+
+    @Override
+    public long getLength() {
+        return content.capacity();
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public PartReader open() {
+        return new MemoryPartReader();
+    }
+
+    /**
+     * The buffer is freed by the garbage collector once nothing references
+     * it anymore.
+     */
+    @Override
+    public void release() throws IOException {
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("MemoryPart [uri=").append(uri).append(", length=").append(getLength()).append("]");
+        return builder.toString();
+    }
+
+    private class MemoryPartReader implements PartReader {
+
+        @Override
+        public long size() {
+            return content.capacity();
+        }
+
+        @Override
+        public int read(final ByteBuffer target, final long position) {
+            if (position >= content.capacity()) {
+                return -1;
+            }
+
+            int length = (int) Math.min(target.remaining(), content.capacity() - position);
+
+            target.put(map(position, length));
+
+            return length;
+        }
+
+        @Override
+        public ByteBuffer map(final long position, final int length) {
+            ByteBuffer region = content.duplicate();
+            region.limit((int) position + length).position((int) position);
+
+            return region;
+        }
+
+        @Override
+        public boolean isInMemory() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
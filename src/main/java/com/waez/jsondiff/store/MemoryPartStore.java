@@ -0,0 +1,139 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Store that keeps small parts in the heap, saving the creation, reading and
+ * deletion of a file for each of them. The parts off the heap are kept by
+ * {@link SlabPartStore} instead.
+ * 
+ * @author Damian
+ */
+public class MemoryPartStore implements PartStore {
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final int maxLength;
+
+    /**
+     * Creates a store for parts up to the given size.
+     * 
+     * @param maxLength
+     *            the maximum amount of bytes of a part.
+     */
+    public MemoryPartStore(final int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public long getMaxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public PartOutput create() {
+        return new MemoryPartOutput();
+    }
+
+    /**
+     * Output that writes into a buffer that doubles its capacity every time
+     * it gets full, up to the maximum length of the store.
+     */
+    private class MemoryPartOutput implements PartOutput {
+        private ByteBuffer buffer = ByteBuffer.allocate(Math.min(INITIAL_CAPACITY, maxLength));
+        private boolean open = true;
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public long size() {
+            return buffer.position();
+        }
+
+        @Override
+        public int write(final ByteBuffer source) throws IOException {
+            ensureOpen();
+
+            int length = source.remaining();
+
+            ensureCapacity(length);
+            buffer.put(source);
+
+            return length;
+        }
+
+        @Override
+        public long transferFrom(final ReadableByteChannel source, final long count) throws IOException {
+            ensureOpen();
+
+            long transferred = 0;
+
+            while (transferred < count) {
+                if (!buffer.hasRemaining()) {
+                    ensureCapacity(1);
+                }
+
+                int oldLimit = buffer.limit();
+                buffer.limit((int) Math.min(oldLimit, buffer.position() + count - transferred));
+
+                int read = source.read(buffer);
+
+                buffer.limit(oldLimit);
+
+                if (read < 0) {
+                    break;
+                }
+
+                transferred += read;
+            }
+
+            return transferred;
+        }
+
+        @Override
+        public Part commit() throws IOException {
+            ensureOpen();
+
+            open = false;
+            buffer.flip();
+
+            return new MemoryPart(buffer);
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        private void ensureCapacity(final int length) throws IOException {
+            long required = (long) buffer.position() + length;
+
+            if (required <= buffer.capacity()) {
+                return;
+            }
+
+            if (required > maxLength) {
+                throw new IOException("Part is bigger than " + maxLength + " bytes");
+            }
+
+            ByteBuffer grown = ByteBuffer
+                    .allocate((int) Math.min(maxLength, Math.max(required, 2L * buffer.capacity())));
+
+            buffer.flip();
+            grown.put(buffer);
+
+            buffer = grown;
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Content of one of the sides to compare, kept by a {@link PartStore} in the
+ * heap, off the heap or in a file, depending on its size.
+ * 
+ * @author Damian
+ */
+public interface Part {
+
+    /**
+     * @return the amount of bytes of the part.
+     */
+    long getLength();
+
+    /**
+     * @return a URI that identifies where the part is kept.
+     */
+    URI getUri();
+
+    /**
+     * Opens the part to read its content. Every reader must be closed once it
+     * is not needed anymore.
+     * 
+     * @return a reader over the content of the part.
+     * @throws IOException
+     *             if the part could not be opened.
+     */
+    PartReader open() throws IOException;
+
+    /**
+     * Tells if this part and the other one are known to be the very same
+     * content, without reading any of them.
+     * 
+     * @param other
+     *            the part to compare with.
+     * @return true if both parts are the same, false if they may be different.
+     * @throws IOException
+     *             if the parts could not be checked.
+     */
+    default boolean isSameAs(Part other) throws IOException {
+        return this == other;
+    }
+
+    /**
+     * Frees the resources that hold the content of the part, which can't be
+     * used anymore once released.
+     * 
+     * @throws IOException
+     *             if the resources could not be freed.
+     */
+    void release() throws IOException;
+}
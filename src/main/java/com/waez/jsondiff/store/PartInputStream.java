@@ -0,0 +1,101 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Stream over a region of an open part, read through a fixed buffer with
+ * positional reads, so several streams can read the same {@link PartReader}
+ * at once, and regions of any size can be read, unlike mappings.
+ *
+ * @author Damian
+ */
+public class PartInputStream extends InputStream {
+    private final PartReader reader;
+    private final long end;
+    private final ByteBuffer buffer;
+    private long position;
+
+    /**
+     * Creates a stream over the bytes of the part between the given
+     * positions.
+     *
+     * @param reader
+     *            the reader of the part, which is not closed with the stream.
+     * @param from
+     *            the position of the first byte to read.
+     * @param to
+     *            the position after the last byte to read.
+     * @param bufferSize
+     *            the amount of bytes read from the part at once.
+     */
+    public PartInputStream(final PartReader reader, final long from, final long to, final int bufferSize) {
+        this.reader = reader;
+        this.position = from;
+        this.end = Math.min(to, reader.size());
+        this.buffer = ByteBuffer.allocate(bufferSize);
+
+        buffer.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] target, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        int read = Math.min(length, buffer.remaining());
+        buffer.get(target, offset, read);
+
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Reads the next bytes of the region when the buffer is exhausted.
+     *
+     * @return false if there is nothing left to read.
+     */
+    private boolean fill() throws IOException {
+        if (buffer.hasRemaining()) {
+            return true;
+        }
+
+        if (position >= end) {
+            return false;
+        }
+
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+        int read = reader.read(buffer, position);
+
+        buffer.flip();
+
+        if (read <= 0) {
+            return false;
+        }
+
+        position += read;
+
+        return true;
+    }
+}
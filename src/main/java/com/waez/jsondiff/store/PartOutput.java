@@ -0,0 +1,44 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel where the content of a new {@link Part} is written. The part only
+ * exists once it is committed, and closing the output before that discards
+ * everything written.
+ * 
+ * @author Damian
+ */
+public interface PartOutput extends WritableByteChannel {
+
+    /**
+     * @return the amount of bytes written so far.
+     */
+    long size();
+
+    /**
+     * Writes bytes read from the source channel, until the given amount of
+     * them or the end of the source.
+     * 
+     * @param source
+     *            the channel to read from.
+     * @param count
+     *            the maximum amount of bytes to transfer.
+     * @return the amount of bytes transferred, which is less than count only
+     *         when the source ended.
+     * @throws IOException
+     *             if the source could not be read, or the part written.
+     */
+    long transferFrom(ReadableByteChannel source, long count) throws IOException;
+
+    /**
+     * Ends the writing, creating the part with everything written.
+     * 
+     * @return the new part.
+     * @throws IOException
+     *             if the part could not be created.
+     */
+    Part commit() throws IOException;
+}
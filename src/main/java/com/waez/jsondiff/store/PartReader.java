@@ -0,0 +1,54 @@
+package com.waez.jsondiff.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reader over the content of an open {@link Part}, which can be read from any
+ * position, as many times and by as many threads as needed.
+ * 
+ * @author Damian
+ */
+public interface PartReader extends Closeable {
+
+    /**
+     * @return the amount of bytes of the part.
+     */
+    long size();
+
+    /**
+     * Reads bytes of the part, starting at the given position, into the
+     * remaining space of the buffer, like a positional read of a
+     * {@link java.nio.channels.FileChannel}.
+     * 
+     * @param target
+     *            the buffer to read into.
+     * @param position
+     *            the position of the first byte to read.
+     * @return the amount of bytes read, or -1 if the position is at the end.
+     * @throws IOException
+     *             if the part could not be read.
+     */
+    int read(ByteBuffer target, long position) throws IOException;
+
+    /**
+     * Gives a read only view of a region of the part, without copying it when
+     * it is kept in memory, or mapping it when it is kept in a file.
+     * 
+     * @param position
+     *            the position of the first byte of the region.
+     * @param length
+     *            the amount of bytes of the region.
+     * @return a buffer with the region between its position and limit.
+     * @throws IOException
+     *             if the region could not be mapped.
+     */
+    ByteBuffer map(long position, int length) throws IOException;
+
+    /**
+     * @return true if the content is already in memory, so mapping any region
+     *         of it is free.
+     */
+    boolean isInMemory();
+}
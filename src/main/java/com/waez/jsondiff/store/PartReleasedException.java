@@ -0,0 +1,18 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a part is opened after it was released. </br>
+ * Nothing was read when it is thrown, so whoever held the part can look for
+ * the one that replaced it and try again.
+ *
+ * @author Damian
+ */
+public class PartReleasedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public PartReleasedException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,25 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+
+/**
+ * Place where the parts to compare are kept.
+ * 
+ * @author Damian
+ */
+public interface PartStore {
+
+    /**
+     * @return the maximum amount of bytes of a part kept by this store.
+     */
+    long getMaxLength();
+
+    /**
+     * Starts a new part, whose content is written to the returned output.
+     * 
+     * @return the output where the content of the part is written.
+     * @throws IOException
+     *             if the part could not be started.
+     */
+    PartOutput create() throws IOException;
+}
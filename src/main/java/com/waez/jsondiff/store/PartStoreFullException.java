@@ -0,0 +1,19 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a store has no room left for a part, even if the part
+ * is not bigger than the maximum length the store can keep. </br>
+ * Nothing of what was being written when it is thrown is lost, so the part
+ * can still be committed and moved to another store.
+ *
+ * @author Damian
+ */
+public class PartStoreFullException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public PartStoreFullException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,151 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Part that counts the references to another one, one for the part itself and
+ * one per open reader, so a part released while a diff reads it, because it
+ * was replaced or evicted, is not released until the diff is done. </br>
+ * A part released before it is opened can't be opened anymore, and tells so
+ * with a {@link PartReleasedException}.
+ *
+ * @author Damian
+ */
+public class SharedPart implements Part {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedPart.class);
+
+    private final Part part;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public SharedPart(final Part part) {
+        this.part = part;
+    }
+
+    @Override
+    public long getLength() {
+        return part.getLength();
+    }
+
+    @Override
+    public URI getUri() {
+        return part.getUri();
+    }
+
+    @Override
+    public PartReader open() throws IOException {
+        int current;
+
+        do {
+            current = references.get();
+
+            if (current == 0) {
+                throw new PartReleasedException("Part " + getUri() + " was already released");
+            }
+        } while (!references.compareAndSet(current, current + 1));
+
+        try {
+            return new SharedPartReader(part.open());
+        } catch (IOException | RuntimeException e) {
+            try {
+                dereference();
+            } catch (IOException ioe) {
+                e.addSuppressed(ioe);
+            }
+
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isSameAs(final Part other) throws IOException {
+        return this == other || part.isSameAs(other instanceof SharedPart ? ((SharedPart) other).part : other);
+    }
+
+    /**
+     * Releases the part once no reader is open. Called again after releasing
+     * the part failed, it tries again.
+     */
+    @Override
+    public void release() throws IOException {
+        if (released.compareAndSet(false, true)) {
+            dereference();
+        } else if (references.get() == 0) {
+            part.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("SharedPart [part=").append(part).append(", references=").append(references.get())
+                .append("]");
+        return builder.toString();
+    }
+
+    /**
+     * Drops the reference of a reader that was closed. The diff that read the
+     * part is done, so a failure to release the part is logged instead of
+     * failing it.
+     */
+    private void releaseReader() {
+        try {
+            dereference();
+        } catch (IOException ioe) {
+            LOGGER.error("Error while trying to release part: '{}' after its last reader", getUri(), ioe);
+        }
+    }
+
+    private void dereference() throws IOException {
+        if (references.decrementAndGet() == 0) {
+            part.release();
+        }
+    }
+
+    private class SharedPartReader implements PartReader {
+        private final PartReader reader;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        SharedPartReader(final PartReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public long size() {
+            return reader.size();
+        }
+
+        @Override
+        public int read(final ByteBuffer target, final long position) throws IOException {
+            return reader.read(target, position);
+        }
+
+        @Override
+        public ByteBuffer map(final long position, final int length) throws IOException {
+            return reader.map(position, length);
+        }
+
+        @Override
+        public boolean isInMemory() {
+            return reader.isInMemory();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    reader.close();
+                } finally {
+                    releaseReader();
+                }
+            }
+        }
+    }
+}
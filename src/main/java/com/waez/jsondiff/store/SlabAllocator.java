@@ -0,0 +1,164 @@
+package com.waez.jsondiff.store;
+
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct buffers, or slabs, grouped in size classes that are powers of
+ * two, whose total capacity never goes beyond a given budget. </br>
+ * Freed slabs are kept in the pool of their class to be reused, so the native
+ * memory is allocated once and the garbage collector never sees the bytes of
+ * the parts. When the budget is exhausted, the free slabs of other classes are
+ * dropped to make room for the one asked for, and if that is not enough, no
+ * slab is given at all.
+ *
+ * @author Damian
+ */
+public class SlabAllocator {
+    private final int minShift;
+    private final long budget;
+    private final Deque<ByteBuffer>[] pools;
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * Creates an allocator with the given size classes and budget.
+     *
+     * @param minSlabSize
+     *            the size in bytes of the smallest slab, rounded up to a power
+     *            of two.
+     * @param maxSlabSize
+     *            the size in bytes of the biggest slab, rounded up to a power
+     *            of two.
+     * @param budget
+     *            the maximum amount of bytes among all the slabs, free or not.
+     */
+    @SuppressWarnings("unchecked")
+    public SlabAllocator(final int minSlabSize, final int maxSlabSize, final long budget) {
+        if (minSlabSize <= 0 || maxSlabSize < minSlabSize || maxSlabSize > 1 << 30) {
+            throw new IllegalArgumentException("Slab sizes must be positive, up to 1 GB, and min not greater than max");
+        }
+
+        this.minShift = shiftOf(minSlabSize);
+        this.budget = budget;
+        this.pools = new Deque[shiftOf(maxSlabSize) - minShift + 1];
+
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    /**
+     * Takes a slab of the smallest class that can hold the given amount of
+     * bytes, reusing a free one if there is any.
+     *
+     * @param length
+     *            the amount of bytes the slab must hold.
+     * @return a cleared slab, or null if there is no room left in the budget.
+     * @throws IllegalArgumentException
+     *             if the length is bigger than the biggest slab.
+     */
+    public ByteBuffer allocate(final int length) {
+        int index = classOf(length);
+
+        if (index >= pools.length) {
+            throw new IllegalArgumentException("No slab can hold " + length + " bytes");
+        }
+
+        ByteBuffer slab = pools[index].poll();
+
+        if (slab != null) {
+            slab.clear();
+
+            return slab;
+        }
+
+        int size = 1 << (minShift + index);
+
+        if (!reserve(size)) {
+            return null;
+        }
+
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Gives a slab back to the pool of its class. It must not be used anymore
+     * after that.
+     *
+     * @param slab
+     *            a slab taken from this allocator.
+     */
+    public void free(final ByteBuffer slab) {
+        pools[classOf(slab.capacity())].push(slab);
+    }
+
+    /**
+     * @return the amount of bytes among all the slabs, free or not.
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * @return the amount of bytes among the slabs that are not in use.
+     */
+    public long getFree() {
+        long free = 0;
+
+        for (int i = 0; i < pools.length; i++) {
+            free += (long) pools[i].size() << (minShift + i);
+        }
+
+        return free;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Adds the given size to the allocated bytes if it fits in the budget,
+     * dropping free slabs, from the biggest class down, while it doesn't.
+     * </br>
+     * Dropped slabs are freed by the garbage collector once unreachable.
+     */
+    private boolean reserve(final int size) {
+        int index = pools.length - 1;
+
+        while (true) {
+            long current = allocated.get();
+
+            if (current + size <= budget) {
+                if (allocated.compareAndSet(current, current + size)) {
+                    return true;
+                }
+
+                continue;
+            }
+
+            while (index >= 0 && pools[index].isEmpty()) {
+                index--;
+            }
+
+            if (index < 0) {
+                return false;
+            }
+
+            ByteBuffer dropped = pools[index].poll();
+
+            if (dropped != null) {
+                allocated.addAndGet(-dropped.capacity());
+            }
+        }
+    }
+
+    private int classOf(final int length) {
+        return Math.max(0, shiftOf(length) - minShift);
+    }
+
+    private static int shiftOf(final int length) {
+        return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+    }
+}
@@ -0,0 +1,278 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Store that keeps parts off the heap, in slabs taken from a
+ * {@link SlabAllocator}, so the native memory used by all of them is bounded
+ * and their bytes never put pressure on the garbage collector. </br>
+ * When the allocator runs out of budget, writing a part fails with a
+ * {@link PartStoreFullException}, so it can be moved to the next store. The
+ * slab of a part goes back to the pool once it is released and every reader
+ * opened over it is closed.
+ *
+ * @author Damian
+ */
+public class SlabPartStore implements PartStore {
+    private final int maxLength;
+    private final SlabAllocator allocator;
+
+    /**
+     * Creates a store for parts up to the given size.
+     *
+     * @param maxLength
+     *            the maximum amount of bytes of a part, not bigger than the
+     *            biggest slab of the allocator.
+     * @param allocator
+     *            the allocator to take the slabs from.
+     */
+    public SlabPartStore(final int maxLength, final SlabAllocator allocator) {
+        this.maxLength = maxLength;
+        this.allocator = allocator;
+    }
+
+    @Override
+    public long getMaxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public PartOutput create() {
+        return new SlabPartOutput();
+    }
+
+    /**
+     * Output that moves to a slab of the next class every time the current one
+     * gets full, giving the previous slab back to the pool.
+     */
+    private class SlabPartOutput implements PartOutput {
+        private ByteBuffer slab;
+        private boolean open = true;
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public long size() {
+            return slab == null ? 0 : slab.position();
+        }
+
+        @Override
+        public int write(final ByteBuffer source) throws IOException {
+            ensureOpen();
+
+            int length = source.remaining();
+
+            // No slab is taken until there is something to keep in it.
+            if (length == 0) {
+                return 0;
+            }
+
+            ensureCapacity(length);
+            slab.put(source);
+
+            return length;
+        }
+
+        @Override
+        public long transferFrom(final ReadableByteChannel source, final long count) throws IOException {
+            ensureOpen();
+
+            long transferred = 0;
+
+            while (transferred < count) {
+                if (slab == null || !slab.hasRemaining()) {
+                    ensureCapacity(1);
+                }
+
+                int oldLimit = slab.limit();
+                slab.limit((int) Math.min(oldLimit, slab.position() + count - transferred));
+
+                int read = source.read(slab);
+
+                slab.limit(oldLimit);
+
+                if (read < 0) {
+                    break;
+                }
+
+                transferred += read;
+            }
+
+            return transferred;
+        }
+
+        @Override
+        public Part commit() throws IOException {
+            ensureOpen();
+
+            open = false;
+
+            // An empty part needs no slab at all.
+            if (slab == null) {
+                return new MemoryPart(new byte[0]);
+            }
+
+            slab.flip();
+
+            return new SlabPart(slab);
+        }
+
+        @Override
+        public void close() {
+            if (open && slab != null) {
+                allocator.free(slab);
+            }
+
+            open = false;
+        }
+
+        private void ensureCapacity(final int length) throws IOException {
+            long required = size() + length;
+
+            if (slab != null && required <= slab.capacity()) {
+                return;
+            }
+
+            if (required > maxLength) {
+                throw new IOException("Part is bigger than " + maxLength + " bytes");
+            }
+
+            ByteBuffer grown = allocator.allocate((int) required);
+
+            if (grown == null) {
+                throw new PartStoreFullException(
+                        "No room left for a part of " + required + " bytes in " + allocator.getBudget() + " bytes");
+            }
+
+            if (slab != null) {
+                slab.flip();
+                grown.put(slab);
+
+                allocator.free(slab);
+            }
+
+            slab = grown;
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+
+    /**
+     * Part kept in a slab, which counts the references to it, one for the part
+     * itself and one per open reader, so a part released while a diff reads it
+     * doesn't give its slab back until the diff is done.
+     */
+    private class SlabPart implements Part {
+        private final ByteBuffer slab;
+        private final ByteBuffer content;
+        private final URI uri = URI.create("offheap:" + UUID.randomUUID());
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        SlabPart(final ByteBuffer slab) {
+            this.slab = slab;
+            this.content = slab.slice().asReadOnlyBuffer();
+        }
+
+        @Override
+        public long getLength() {
+            return content.capacity();
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        public PartReader open() throws IOException {
+            int current;
+
+            do {
+                current = references.get();
+
+                if (current == 0) {
+                    throw new PartReleasedException("Part " + uri + " was already released");
+                }
+            } while (!references.compareAndSet(current, current + 1));
+
+            return new SlabPartReader();
+        }
+
+        @Override
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                dereference();
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("SlabPart [uri=").append(uri).append(", length=").append(getLength()).append("]");
+            return builder.toString();
+        }
+
+        private void dereference() {
+            if (references.decrementAndGet() == 0) {
+                allocator.free(slab);
+            }
+        }
+
+        private class SlabPartReader implements PartReader {
+            private final AtomicBoolean closed = new AtomicBoolean();
+
+            @Override
+            public long size() {
+                return content.capacity();
+            }
+
+            @Override
+            public int read(final ByteBuffer target, final long position) {
+                if (position >= content.capacity()) {
+                    return -1;
+                }
+
+                int length = (int) Math.min(target.remaining(), content.capacity() - position);
+
+                target.put(map(position, length));
+
+                return length;
+            }
+
+            @Override
+            public ByteBuffer map(final long position, final int length) {
+                ByteBuffer region = content.duplicate();
+                region.limit((int) position + length).position((int) position);
+
+                return region;
+            }
+
+            @Override
+            public boolean isInMemory() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                if (closed.compareAndSet(false, true)) {
+                    dereference();
+                }
+            }
+        }
+    }
+}
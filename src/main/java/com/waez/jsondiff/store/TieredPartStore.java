@@ -0,0 +1,163 @@
+package com.waez.jsondiff.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Store that chooses where to keep every part by its size, among a list of
+ * stores sorted by the maximum length they can keep. </br>
+ * Since the size of a part is not known until it is fully written, every part
+ * starts in the first store, and it is moved to the next one as soon as it
+ * grows beyond what the current store can keep, or the current store has no
+ * room left for it.
+ * 
+ * @author Damian
+ */
+public class TieredPartStore implements PartStore {
+    private final PartStore[] tiers;
+
+    /**
+     * Creates a store over the given ones.
+     * 
+     * @param tiers
+     *            the stores to use, from the one for the smallest parts to the
+     *            one for the biggest.
+     */
+    public TieredPartStore(final PartStore... tiers) {
+        this.tiers = tiers.clone();
+    }
+
+    @Override
+    public long getMaxLength() {
+        return tiers[tiers.length - 1].getMaxLength();
+    }
+
+    @Override
+    public PartOutput create() throws IOException {
+        return new TieredPartOutput();
+    }
+
+    private class TieredPartOutput implements PartOutput {
+        private int tier;
+        private PartOutput current;
+
+        TieredPartOutput() throws IOException {
+            this.current = tiers[0].create();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return current.isOpen();
+        }
+
+        @Override
+        public long size() {
+            return current.size();
+        }
+
+        @Override
+        public int write(final ByteBuffer source) throws IOException {
+            while (true) {
+                long required = current.size() + source.remaining();
+
+                if (required > tiers[tier].getMaxLength()) {
+                    spill(required);
+                    continue;
+                }
+
+                try {
+                    return current.write(source);
+                } catch (PartStoreFullException e) {
+                    spill(required);
+                }
+            }
+        }
+
+        @Override
+        public long transferFrom(final ReadableByteChannel source, final long count) throws IOException {
+            long transferred = 0;
+
+            while (transferred < count) {
+                long room = tiers[tier].getMaxLength() - current.size();
+
+                if (room == 0) {
+                    spill(current.size() + 1);
+                    continue;
+                }
+
+                long expected = Math.min(room, count - transferred);
+                long before = current.size();
+
+                try {
+                    long read = current.transferFrom(source, expected);
+
+                    transferred += read;
+
+                    if (read < expected) {
+                        break;
+                    }
+                } catch (PartStoreFullException e) {
+                    // What was read before the store got full is kept.
+                    transferred += current.size() - before;
+
+                    spill(current.size() + 1);
+                }
+            }
+
+            return transferred;
+        }
+
+        @Override
+        public Part commit() throws IOException {
+            return current.commit();
+        }
+
+        @Override
+        public void close() throws IOException {
+            current.close();
+        }
+
+        /**
+         * Moves what was written so far to the first of the next stores that
+         * can keep the given amount of bytes and still has room for them.
+         */
+        private void spill(final long required) throws IOException {
+            Part written = current.commit();
+
+            try {
+                for (int next = tier + 1; next < tiers.length; next++) {
+                    if (required > tiers[next].getMaxLength()) {
+                        continue;
+                    }
+
+                    PartOutput output = tiers[next].create();
+
+                    try (PartReader reader = written.open()) {
+                        output.write(reader.map(0, (int) written.getLength()));
+                    } catch (PartStoreFullException e) {
+                        output.close();
+                        continue;
+                    } catch (IOException | RuntimeException e) {
+                        output.close();
+
+                        throw e;
+                    }
+
+                    tier = next;
+                    current = output;
+
+                    return;
+                }
+            } finally {
+                written.release();
+            }
+
+            if (required > getMaxLength()) {
+                throw new IOException("Part is bigger than " + getMaxLength() + " bytes");
+            }
+
+            throw new PartStoreFullException("No store has room left for a part of " + required + " bytes");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * DTO Class that represent a change between the parts compared as JSON
+ * </br>
+ * This class is used to be marshalled into a JSON at controller level inside
+ * DiffResponseDTO.
+ * 
+ * @author Damian
+ *
+ */
+public class ChangeDTO {
+    private final String type;
+    private final String path;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String oldValue;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String newValue;
+
+    public ChangeDTO() {
+        this.type = null;
+        this.path = null;
+        this.oldValue = null;
+        this.newValue = null;
+    }
+
+    public ChangeDTO(String type, String path, String oldValue, String newValue) {
+        this.type = type;
+        this.path = path;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    public String getNewValue() {
+        return newValue;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Change [type=").append(type).append(", path=").append(path).append(", oldValue=")
+                .append(oldValue).append(", newValue=").append(newValue).append("]");
+        return builder.toString();
+    }
+}
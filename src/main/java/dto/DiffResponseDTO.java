@@ -1,37 +1,92 @@
 package dto;
 
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 /**
  * DTO Class that represent all the differences found when the difference was
  * performed. </br>
- * This class is used to be marshalled into a JSON at controller level.
+ * This class is used to be marshalled into a JSON at controller level. </br>
+ * Differences are kept packed as (line, offset, length) in a single array of
+ * longs, and written from it straight into the JSON. The {@link LineDTO}
+ * returned by {@link #getLines()} are just a view created on demand. </br>
+ * When only a page of the differences was asked for, the cursor to ask for the
+ * next one is included, if there are more differences, and the response is
+ * marked as truncated. </br>
+ * When the parts have different size, the edits that turn the left one into
+ * the right one are included instead, as {@link EditDTO}, and when they were
+ * compared as JSON, the values that changed, as {@link ChangeDTO}.
  * 
  * @author Damian
  *
  */
 public class DiffResponseDTO {
-    private final List<LineDTO> lines;
+    private static final int FIELDS = 3;
+    private static final int INITIAL_CAPACITY = 16 * FIELDS;
+
+    private final List<LineDTO> lines = new LinesView();
+    private long[] runs = new long[0];
+    private int size;
     private String message;
 
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private final List<EditDTO> edits = new ArrayList<>();
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private final List<ChangeDTO> changes = new ArrayList<>();
+
+    private boolean truncated;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
     public DiffResponseDTO() {
-        this.lines = new ArrayList<>();
     }
 
     public DiffResponseDTO(String message) {
         this.message = message;
-        this.lines = new ArrayList<>();
     }
 
-    public void addLine(int line, int offset, int length) {
-        lines.add(new LineDTO(line, offset, length));
+    public void addLine(long line, long offset, long length) {
+        if (size == runs.length) {
+            runs = Arrays.copyOf(runs, Math.max(INITIAL_CAPACITY, runs.length * 2));
+        }
+
+        runs[size++] = line;
+        runs[size++] = offset;
+        runs[size++] = length;
     }
 
+    @JsonSerialize(using = LinesSerializer.class)
     public List<LineDTO> getLines() {
         return lines;
     }
 
+    public void addEdit(EditDTO edit) {
+        edits.add(edit);
+    }
+
+    public List<EditDTO> getEdits() {
+        return edits;
+    }
+
+    public void addChange(ChangeDTO change) {
+        changes.add(change);
+    }
+
+    public List<ChangeDTO> getChanges() {
+        return changes;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -40,10 +95,94 @@ public class DiffResponseDTO {
         this.message = message;
     }
 
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        builder.append("DiffResponseDTO [lines=").append(lines).append(", message=").append(message).append("]");
+        builder.append("DiffResponseDTO [lines=").append(lines).append(", edits=").append(edits)
+                .append(", changes=").append(changes).append(", message=").append(message).append(", truncated=")
+                .append(truncated).append(", nextCursor=").append(nextCursor).append("]");
         return builder.toString();
     }
+
+    /**
+     * List of {@link LineDTO} backed by the packed differences, which creates
+     * them only when they are asked for.
+     */
+    private class LinesView extends AbstractList<LineDTO> {
+
+        @Override
+        public LineDTO get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+
+            int i = index * FIELDS;
+
+            return new LineDTO(runs[i], runs[i + 1], runs[i + 2]);
+        }
+
+        @Override
+        public void add(int index, LineDTO element) {
+            if (index != size()) {
+                throw new UnsupportedOperationException("Differences can only be added at the end");
+            }
+
+            addLine(element.getLine(), element.getOffset(), element.getLength());
+        }
+
+        @Override
+        public int size() {
+            return size / FIELDS;
+        }
+
+        DiffResponseDTO owner() {
+            return DiffResponseDTO.this;
+        }
+    }
+
+    /**
+     * Writes the differences from the packed array, without creating any
+     * {@link LineDTO}.
+     */
+    static class LinesSerializer extends JsonSerializer<List<LineDTO>> {
+
+        @Override
+        public void serialize(List<LineDTO> value, JsonGenerator gen, SerializerProvider serializers)
+                throws IOException {
+            if (!(value instanceof DiffResponseDTO.LinesView)) {
+                serializers.defaultSerializeValue(value, gen);
+                return;
+            }
+
+            DiffResponseDTO response = ((DiffResponseDTO.LinesView) value).owner();
+
+            gen.writeStartArray();
+
+            for (int i = 0; i < response.size; i += FIELDS) {
+                gen.writeStartObject();
+                gen.writeNumberField("line", response.runs[i]);
+                gen.writeNumberField("offset", response.runs[i + 1]);
+                gen.writeNumberField("length", response.runs[i + 2]);
+                gen.writeEndObject();
+            }
+
+            gen.writeEndArray();
+        }
+    }
 }
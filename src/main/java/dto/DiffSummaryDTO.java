@@ -0,0 +1,59 @@
+package dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * DTO Class that represent a summary of the difference: if both parts are
+ * equal, and where the first difference is when they are not. </br>
+ * This class is used to be marshalled into a JSON at controller level.
+ * 
+ * @author Damian
+ *
+ */
+public class DiffSummaryDTO {
+    private boolean equal;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LineDTO firstDifference;
+
+    private String message;
+
+    public DiffSummaryDTO() {
+    }
+
+    public DiffSummaryDTO(String message) {
+        this.message = message;
+    }
+
+    public boolean isEqual() {
+        return equal;
+    }
+
+    public void setEqual(boolean equal) {
+        this.equal = equal;
+    }
+
+    public LineDTO getFirstDifference() {
+        return firstDifference;
+    }
+
+    public void setFirstDifference(LineDTO firstDifference) {
+        this.firstDifference = firstDifference;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("DiffSummaryDTO [equal=").append(equal).append(", firstDifference=").append(firstDifference)
+                .append(", message=").append(message).append("]");
+        return builder.toString();
+    }
+}
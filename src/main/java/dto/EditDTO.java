@@ -0,0 +1,62 @@
+package dto;
+
+/**
+ * DTO Class that represent an edit between the parts of different size </br>
+ * This class is used to be marshalled into a JSON at controller level inside
+ * DiffResponseDTO.
+ * 
+ * @author Damian
+ *
+ */
+public class EditDTO {
+    private final String type;
+    private final Long leftOffset;
+    private final Long leftLength;
+    private final Long rightOffset;
+    private final Long rightLength;
+
+    public EditDTO() {
+        this.type = null;
+        this.leftOffset = 0L;
+        this.leftLength = 0L;
+        this.rightOffset = 0L;
+        this.rightLength = 0L;
+    }
+
+    public EditDTO(String type, Long leftOffset, Long leftLength, Long rightOffset, Long rightLength) {
+        this.type = type;
+        this.leftOffset = leftOffset;
+        this.leftLength = leftLength;
+        this.rightOffset = rightOffset;
+        this.rightLength = rightLength;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getLeftOffset() {
+        return leftOffset;
+    }
+
+    public Long getLeftLength() {
+        return leftLength;
+    }
+
+    public Long getRightOffset() {
+        return rightOffset;
+    }
+
+    public Long getRightLength() {
+        return rightLength;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Edit [type=").append(type).append(", leftOffset=").append(leftOffset)
+                .append(", leftLength=").append(leftLength).append(", rightOffset=").append(rightOffset)
+                .append(", rightLength=").append(rightLength).append("]");
+        return builder.toString();
+    }
+}
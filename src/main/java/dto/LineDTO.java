@@ -9,31 +9,31 @@ package dto;
  *
  */
 public class LineDTO {
-    private final Integer line;
-    private final Integer offset;
-    private final Integer length;
+    private final Long line;
+    private final Long offset;
+    private final Long length;
 
     public LineDTO() {
-        this.line = 0;
-        this.offset = 0;
-        this.length = 0;
+        this.line = 0L;
+        this.offset = 0L;
+        this.length = 0L;
     }
 
-    public LineDTO(Integer line, Integer offset, Integer length) {
+    public LineDTO(Long line, Long offset, Long length) {
         this.line = line;
         this.offset = offset;
         this.length = length;
     }
 
-    public Integer getLine() {
+    public Long getLine() {
         return line;
     }
 
-    public Integer getOffset() {
+    public Long getOffset() {
         return offset;
     }
 
-    public Integer getLength() {
+    public Long getLength() {
         return length;
     }
 
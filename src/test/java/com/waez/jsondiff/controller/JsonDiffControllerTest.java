@@ -5,30 +5,44 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
-import java.nio.file.Paths;
 import java.util.Optional;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.waez.jsondiff.config.SmileHttpMessageConverter;
 import com.waez.jsondiff.model.DiffObject;
+import com.waez.jsondiff.model.DiffQuery;
 import com.waez.jsondiff.service.DiffService;
+import com.waez.jsondiff.store.MemoryPart;
 
 import dto.DiffResponseDTO;
+import dto.DiffSummaryDTO;
+import dto.LineDTO;
 
 public class JsonDiffControllerTest {
 
@@ -120,14 +134,50 @@ public class JsonDiffControllerTest {
         verify(diffService).addNewDiff(Matchers.any(DiffObject.class), Matchers.anyObject(), Matchers.eq(left));
     }
 
+    @Test
+    public void testLeftRawDiff() throws Exception {
+        boolean left = true;
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(null);
+        when(diffService.addNewRawDiff(Matchers.any(DiffObject.class), Matchers.anyObject(), Matchers.eq(left)))
+                .thenReturn(URI.create(FILE_LOCATION));
+
+        MvcResult responseBody = this.mockMvc
+                .perform(put("/v1/diff/{id}/left", 1).contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[] { 0, 1, 2 }))
+                .andExpect(status().isCreated()).andReturn();
+
+        assertTrue(FILE_LOCATION.equals(responseBody.getResponse().getHeader("location")));
+
+        verify(diffService).addNewRawDiff(Matchers.any(DiffObject.class), Matchers.anyObject(), Matchers.eq(left));
+        verify(diffService, never()).addNewDiff(Matchers.any(DiffObject.class), Matchers.anyObject(),
+                Matchers.anyBoolean());
+    }
+
+    @Test
+    public void testRightRawDiffThrowsIOException() throws Exception {
+        boolean left = false;
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(null);
+        when(diffService.addNewRawDiff(Matchers.any(DiffObject.class), Matchers.anyObject(), Matchers.eq(left)))
+                .thenThrow(new IOException("Test Exception"));
+
+        this.mockMvc
+                .perform(put("/v1/diff/{id}/right", 1).contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[] { 0, 1, 2 }))
+                .andExpect(status().is5xxServerError());
+
+        verify(diffService).addNewRawDiff(Matchers.any(DiffObject.class), Matchers.anyObject(), Matchers.eq(left));
+    }
+
     @Test
     public void testGetDiffWithBothParts() throws Exception {
         DiffResponseDTO expected = new DiffResponseDTO();
         expected.setMessage("Ok");
 
         DiffObject diffObject = new DiffObject(1l);
-        diffObject.setLeftPart(Optional.of(Paths.get("C:/")));
-        diffObject.setRightPart(Optional.of(Paths.get("C:/")));
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
 
         when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
         when(diffService.makeDiff(diffObject)).thenReturn(expected);
@@ -143,13 +193,77 @@ public class JsonDiffControllerTest {
         verify(diffService).makeDiff(diffObject);
     }
 
+    @Test
+    public void testGetShiftedDiff() throws Exception {
+        DiffResponseDTO expected = new DiffResponseDTO();
+        expected.setMessage("Ok");
+
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+        when(diffService.makeShiftedDiff(diffObject)).thenReturn(expected);
+
+        this.mockMvc.perform(get("/v1/diff/{id}", 1).param("mode", "shifted")).andExpect(status().isOk());
+
+        verify(diffService).makeShiftedDiff(diffObject);
+        verify(diffService, never()).makeDiff(diffObject);
+    }
+
+    @Test
+    public void testGetStructuralDiff() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+        when(diffService.makeStructuralDiff(diffObject, false, null)).thenReturn(new DiffResponseDTO("Ok"));
+
+        this.mockMvc.perform(get("/v1/diff/{id}", 1).param("mode", "structural")).andExpect(status().isOk());
+
+        verify(diffService).makeStructuralDiff(diffObject, false, null);
+    }
+
+    @Test
+    public void testGetStructuralDiffWithArrayKey() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+        when(diffService.makeStructuralDiff(diffObject, false, "/id")).thenReturn(new DiffResponseDTO("Ok"));
+        when(diffService.makeStructuralDiff(diffObject, false, "id")).thenThrow(new IllegalArgumentException("No"));
+
+        this.mockMvc.perform(get("/v1/diff/{id}", 1).param("mode", "structural").param("arrayKey", "/id"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/v1/diff/{id}", 1).param("mode", "structural").param("arrayKey", "id"))
+                .andExpect(status().isBadRequest());
+
+        verify(diffService).makeStructuralDiff(diffObject, false, "/id");
+    }
+
+    @Test
+    public void testGetStructuralDiffOfInvalidJson() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+        when(diffService.makeStructuralDiff(diffObject, false, null))
+                .thenThrow(new JsonParseException(null, "Unexpected"));
+
+        this.mockMvc.perform(get("/v1/diff/{id}", 1).param("mode", "structural"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testGetDiffWithOnePart() throws Exception {
         DiffResponseDTO expected = new DiffResponseDTO();
         expected.setMessage("Ok");
 
         DiffObject diffObject = new DiffObject(1l);
-        diffObject.setLeftPart(Optional.of(Paths.get("C:/")));
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
 
         when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
         when(diffService.makeDiff(diffObject)).thenReturn(expected);
@@ -167,8 +281,8 @@ public class JsonDiffControllerTest {
         expected.setMessage("Ok");
 
         DiffObject diffObject = new DiffObject(1l);
-        diffObject.setLeftPart(Optional.of(Paths.get("C:/")));
-        diffObject.setRightPart(Optional.of(Paths.get("C:/")));
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
 
         when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
         when(diffService.makeDiff(diffObject)).thenThrow(new IOException());
@@ -180,6 +294,197 @@ public class JsonDiffControllerTest {
         verify(diffService).makeDiff(diffObject);
     }
 
+    @Test
+    public void testGetDiffAsSmile() throws Exception {
+        DiffResponseDTO expected = new DiffResponseDTO("Ok");
+        expected.addLine(3, 1, 2);
+        expected.addLine(7, 0, 5);
+
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+        when(diffService.makeDiff(diffObject)).thenReturn(expected);
+
+        MockMvc smileMockMvc = MockMvcBuilders.standaloneSetup(underTest)
+                .setMessageConverters(new MappingJackson2HttpMessageConverter(),
+                        new SmileHttpMessageConverter())
+                .build();
+
+        MvcResult responseBody = smileMockMvc
+                .perform(get("/v1/diff/{id}", 1).accept(SmileHttpMessageConverter.APPLICATION_SMILE_VALUE))
+                .andExpect(status().isOk()).andReturn();
+
+        assertTrue(responseBody.getResponse().getContentType()
+                .startsWith(SmileHttpMessageConverter.APPLICATION_SMILE_VALUE));
+
+        DiffResponseDTO response = new ObjectMapper(new SmileFactory())
+                .readValue(responseBody.getResponse().getContentAsByteArray(), DiffResponseDTO.class);
+
+        assertTrue("Ok".equals(response.getMessage()));
+        assertTrue(expected.getLines().toString().equals(response.getLines().toString()));
+    }
+
+    @Test
+    public void testGetDiffPage() throws Exception {
+        DiffResponseDTO expected = new DiffResponseDTO("Ok");
+        expected.addLine(3, 1, 2);
+        expected.setNextCursor("5:0");
+
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+        when(diffService.makeDiff(Matchers.eq(diffObject), Matchers.any(DiffQuery.class))).thenReturn(expected);
+
+        MvcResult responseBody = this.mockMvc
+                .perform(get("/v1/diff/{id}", 1).param("fromLine", "2").param("limit", "1"))
+                .andExpect(status().isOk()).andReturn();
+
+        DiffResponseDTO response = new ObjectMapper().readValue(responseBody.getResponse().getContentAsString(),
+                DiffResponseDTO.class);
+
+        assertTrue("5:0".equals(response.getNextCursor()));
+        assertTrue(response.getLines().size() == 1);
+        verify(diffService).makeDiff(Matchers.eq(diffObject), Matchers.any(DiffQuery.class));
+        verify(diffService, never()).makeDiff(diffObject);
+    }
+
+    @Test
+    public void testGetDiffWithMaxDifferences() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+        when(diffService.makeDiff(Matchers.eq(diffObject), Matchers.any(DiffQuery.class)))
+                .thenReturn(new DiffResponseDTO("Ok"));
+
+        this.mockMvc.perform(get("/v1/diff/{id}", 1).param("maxDifferences", "10").param("limit", "20"))
+                .andExpect(status().isOk());
+
+        verify(diffService).makeDiff(Matchers.eq(diffObject),
+                Matchers.argThat(new ArgumentMatcher<DiffQuery>() {
+                    @Override
+                    public boolean matches(Object query) {
+                        return ((DiffQuery) query).getLimit() == 10;
+                    }
+                }));
+    }
+
+    @Test
+    public void testGetDiffPageOfDifferentSizesHasEdits() throws Exception {
+        DiffService service = new DiffService();
+        DiffObject diffObject = new DiffObject(1l);
+
+        ReflectionTestUtils.setField(underTest, "diffService", service);
+
+        try {
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaa\naaaa".getBytes()), true);
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaa\nbbaaaa".getBytes()), false);
+
+            // The page is computed, and the capped one taken from the memoized full diff.
+            String page = this.mockMvc.perform(get("/v1/diff/{id}", 1).param("fromLine", "1"))
+                    .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+            String full = this.mockMvc.perform(get("/v1/diff/{id}", 1)).andExpect(status().isOk()).andReturn()
+                    .getResponse().getContentAsString();
+            String capped = this.mockMvc.perform(get("/v1/diff/{id}", 1).param("maxDifferences", "1"))
+                    .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+
+            DiffResponseDTO fullResponse = new ObjectMapper().readValue(full, DiffResponseDTO.class);
+            DiffResponseDTO pageResponse = new ObjectMapper().readValue(page, DiffResponseDTO.class);
+            DiffResponseDTO cappedResponse = new ObjectMapper().readValue(capped, DiffResponseDTO.class);
+
+            assertTrue("Data is NOT the same size".equals(pageResponse.getMessage()));
+            assertTrue("[Edit [type=INSERT, leftOffset=5, leftLength=0, rightOffset=5, rightLength=2]]"
+                    .equals(pageResponse.getEdits().toString()));
+            assertTrue(fullResponse.getEdits().toString().equals(pageResponse.getEdits().toString()));
+            assertTrue(fullResponse.getEdits().toString().equals(cappedResponse.getEdits().toString()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testGetSummary() throws Exception {
+        DiffSummaryDTO expected = new DiffSummaryDTO("Ok");
+        expected.setFirstDifference(new LineDTO(2l, 3l, 4l));
+
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+        when(diffService.summarize(diffObject)).thenReturn(expected);
+
+        MvcResult responseBody = this.mockMvc.perform(get("/v1/diff/{id}/summary", 1)).andExpect(status().isOk())
+                .andReturn();
+
+        DiffSummaryDTO response = new ObjectMapper().readValue(responseBody.getResponse().getContentAsString(),
+                DiffSummaryDTO.class);
+
+        assertTrue(!response.isEqual());
+        assertTrue(response.getFirstDifference().getOffset() == 3);
+        verify(diffService, never()).makeDiff(diffObject);
+    }
+
+    @Test
+    public void testGetSummaryWithOnePart() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+
+        this.mockMvc.perform(get("/v1/diff/{id}/summary", 1)).andExpect(status().isBadRequest());
+
+        verify(diffService, never()).summarize(diffObject);
+    }
+
+    @Test
+    public void testGetDiffPageWithInvalidCursor() throws Exception {
+        this.mockMvc.perform(get("/v1/diff/{id}", 1).param("cursor", "nope")).andExpect(status().isBadRequest());
+
+        verify(diffService, never()).getDiffById(Matchers.anyLong());
+    }
+
+    @Test
+    public void testStreamDiffWithBothParts() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+
+        MvcResult asyncResult = this.mockMvc.perform(get("/v1/diff/{id}", 1).param("stream", "true"))
+                .andExpect(request().asyncStarted()).andReturn();
+
+        this.mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isOk());
+
+        verify(diffService).streamDiff(Matchers.eq(diffObject), Matchers.any(OutputStream.class));
+        verify(diffService, never()).makeDiff(diffObject);
+    }
+
+    @Test
+    public void testStreamDiffWithOnePart() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[0])));
+
+        when(diffService.getDiffById(Matchers.anyLong())).thenReturn(diffObject);
+
+        MvcResult asyncResult = this.mockMvc.perform(get("/v1/diff/{id}", 1).param("stream", "true"))
+                .andExpect(request().asyncStarted()).andExpect(status().isBadRequest()).andReturn();
+
+        asyncResult.getAsyncResult();
+
+        DiffResponseDTO response = new ObjectMapper().readValue(asyncResult.getResponse().getContentAsString(),
+                DiffResponseDTO.class);
+
+        assertTrue(response.getMessage().contains("One of the parts to compare with are missing"));
+        verify(diffService, never()).streamDiff(Matchers.eq(diffObject), Matchers.any(OutputStream.class));
+    }
+
     @Test
     public void testGetDiffWithNoParts() throws Exception {
         when(diffService.getDiffById(Matchers.anyLong())).thenReturn(null);
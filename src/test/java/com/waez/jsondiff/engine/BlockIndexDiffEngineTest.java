@@ -0,0 +1,126 @@
+package com.waez.jsondiff.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.waez.jsondiff.store.FilePart;
+import com.waez.jsondiff.store.PartReader;
+
+public class BlockIndexDiffEngineTest {
+
+    @Test
+    public void testDifferentBlocks() {
+        BlockIndex left = index("aaaa\naaaa\naaaa\naaaa".getBytes(), 4, 3);
+        BlockIndex right = index("aaaa\naaba\naaaa\nbaaa".getBytes(), 4, 5);
+
+        BitSet different = left.differentBlocks(right);
+
+        assertEquals(2, different.cardinality());
+        assertTrue(different.get(1));
+        assertTrue(different.get(3));
+        assertTrue(left.differentBlocks(index("aaaa\naaaa\naaaa\naaaa".getBytes(), 4, 7)).isEmpty());
+    }
+
+    @Test
+    public void testBlocksOfLines() {
+        // Lines start at 0, 3, 10 and 12, blocks at 0, 4, 8 and 12.
+        BlockIndex index = index("ab\nabcdef\na\nabc".getBytes(), 4, 3);
+
+        assertEquals(0, index.firstBlockOf(0));
+        assertEquals(1, index.endBlockOf(0));
+        assertEquals(0, index.firstBlockOf(1));
+        assertEquals(3, index.endBlockOf(1));
+        assertEquals(2, index.firstBlockOf(2));
+        assertEquals(3, index.endBlockOf(2));
+        assertEquals(3, index.firstBlockOf(3));
+        assertEquals(4, index.endBlockOf(3));
+    }
+
+    @Test
+    public void testDiffOfLines() throws IOException {
+        byte[] left = "aaaa\naaaa\naaaa\naaaa\naaaa".getBytes();
+        byte[] right = "abaa\naaba\naaab\nbaaa\naaab".getBytes();
+
+        List<String> runs = diff(left, right,
+                new BlockIndexDiffEngine(index(left, 4, 5), index(right, 4, 5), 4, 1, 2));
+
+        assertTrue(runs.contains("1:2:1"));
+        assertTrue(runs.contains("2:3:1"));
+        assertTrue(!runs.contains("0:1:1"));
+        assertTrue(!runs.contains("4:3:1"));
+    }
+
+    @Test
+    public void testDiffMatchesFullScan() throws IOException {
+        Random random = new Random(3);
+
+        for (int round = 0; round < 50; round++) {
+            byte[] left = new byte[random.nextInt(600)];
+
+            for (int i = 0; i < left.length; i++) {
+                left[i] = random.nextInt(9) == 0 ? (byte) '\n' : (byte) 'a';
+            }
+
+            byte[] right = left.clone();
+
+            for (int changes = random.nextInt(5); changes > 0 && right.length > 0; changes--) {
+                int start = random.nextInt(right.length);
+
+                for (int i = start; i < Math.min(right.length, start + random.nextInt(20)); i++) {
+                    right[i] = 'b';
+                }
+            }
+
+            int blockSize = 1 + random.nextInt(64);
+
+            DiffEngine engine = new BlockIndexDiffEngine(index(left, blockSize, 1 + random.nextInt(50)),
+                    index(right, blockSize, 1 + random.nextInt(50)), 1 + random.nextInt(16));
+
+            assertEquals(diff(left, right, new ByteDiffEngine(16)), diff(left, right, engine));
+        }
+    }
+
+    private static BlockIndex index(final byte[] content, final int blockSize, final int writeSize) {
+        BlockIndexBuilder builder = new BlockIndexBuilder(blockSize);
+
+        for (int i = 0; i < content.length; i += writeSize) {
+            builder.update(content, i, Math.min(writeSize, content.length - i));
+        }
+
+        return builder.build();
+    }
+
+    private static List<String> diff(final byte[] left, final byte[] right, final DiffEngine engine)
+            throws IOException {
+        Path leftPath = Files.createTempFile("tempLeftFile", ".tmp");
+        Path rightPath = Files.createTempFile("tempRightFile", ".tmp");
+
+        try {
+            Files.write(leftPath, left);
+            Files.write(rightPath, right);
+
+            List<String> runs = new ArrayList<>();
+
+            try (PartReader leftReader = new FilePart(leftPath).open();
+                    PartReader rightReader = new FilePart(rightPath).open()) {
+                engine.diff(leftReader, rightReader,
+                        (line, offset, length) -> runs.add(line + ":" + offset + ":" + length));
+            }
+
+            return runs;
+        } finally {
+            Files.deleteIfExists(leftPath);
+            Files.deleteIfExists(rightPath);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.waez.jsondiff.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.waez.jsondiff.store.FilePart;
+import com.waez.jsondiff.store.PartReader;
+
+public class ByteDiffEngineTest {
+
+    @Test
+    public void testDiffReportsRunsPerLine() throws IOException {
+        List<String> runs = diff("aaaa\nabba\naaaa", "aaab\nabaa\nbbaa", 4);
+
+        assertEquals(3, runs.size());
+        assertEquals("0:3:1", runs.get(0));
+        assertEquals("1:2:1", runs.get(1));
+        assertEquals("2:0:2", runs.get(2));
+    }
+
+    @Test
+    public void testDiffDifferentNewLineEndsTheRun() throws IOException {
+        List<String> runs = diff("aa\naa", "abxaa", 64);
+
+        assertEquals(1, runs.size());
+        assertEquals("0:1:2", runs.get(0));
+    }
+
+    @Test
+    public void testDiffRunAcrossBuffers() throws IOException {
+        List<String> runs = diff("aaaaaaaaaaaaaaaaaaaa", "aaaabbbbbbbbbbbbbbba", 3);
+
+        assertEquals(1, runs.size());
+        assertEquals("0:4:15", runs.get(0));
+    }
+
+    @Test
+    public void testMappedDiffRunAcrossWindows() throws IOException {
+        List<String> runs = diff("aaaa\naaaaaaaaaaaaaaa".getBytes(), "aaab\naaabbbbbbbbbbba".getBytes(),
+                new ByteDiffEngine(64, 0, 5));
+
+        assertEquals(2, runs.size());
+        assertEquals("0:3:1", runs.get(0));
+        assertEquals("1:3:11", runs.get(1));
+    }
+
+    @Test
+    public void testDiffMatchesByteByByteComparison() throws IOException {
+        Random random = new Random(42);
+
+        for (int round = 0; round < 50; round++) {
+            byte[] left = new byte[random.nextInt(300)];
+            random.nextBytes(left);
+
+            byte[] right = left.clone();
+
+            for (int i = 0; i < left.length; i++) {
+                if (random.nextInt(10) == 0) {
+                    left[i] = '\n';
+                }
+
+                if (random.nextInt(8) == 0) {
+                    right[i] = (byte) random.nextInt(4);
+                }
+            }
+
+            assertEquals(reference(left, right), diff(left, right, 1 + random.nextInt(40)));
+            assertEquals(reference(left, right),
+                    diff(left, right, new ByteDiffEngine(64, 0, 1 + random.nextInt(40))));
+        }
+    }
+
+    private static List<String> diff(final String left, final String right, final int bufferSize)
+            throws IOException {
+        return diff(left.getBytes(), right.getBytes(), bufferSize);
+    }
+
+    private static List<String> diff(final byte[] left, final byte[] right, final int bufferSize)
+            throws IOException {
+        return diff(left, right, new ByteDiffEngine(bufferSize));
+    }
+
+    private static List<String> diff(final byte[] left, final byte[] right, final ByteDiffEngine engine)
+            throws IOException {
+        Path leftPath = Files.createTempFile("tempLeftFile", ".tmp");
+        Path rightPath = Files.createTempFile("tempRightFile", ".tmp");
+
+        try {
+            Files.write(leftPath, left);
+            Files.write(rightPath, right);
+
+            List<String> runs = new ArrayList<>();
+
+            try (PartReader leftReader = new FilePart(leftPath).open();
+                    PartReader rightReader = new FilePart(rightPath).open()) {
+                engine.diff(leftReader, rightReader,
+                        (line, offset, length) -> runs.add(line + ":" + offset + ":" + length));
+            }
+
+            return runs;
+        } finally {
+            Files.deleteIfExists(leftPath);
+            Files.deleteIfExists(rightPath);
+        }
+    }
+
+    private static List<String> reference(final byte[] left, final byte[] right) {
+        List<String> runs = new ArrayList<>();
+
+        int line = 0;
+        int lineStart = 0;
+        int runStart = -1;
+
+        for (int i = 0; i < left.length; i++) {
+            if (left[i] != right[i] && runStart < 0) {
+                runStart = i;
+            } else if (left[i] == right[i] && runStart >= 0) {
+                runs.add(line + ":" + (runStart - lineStart) + ":" + (i - runStart));
+                runStart = -1;
+            }
+
+            if (left[i] == '\n') {
+                if (runStart >= 0) {
+                    runs.add(line + ":" + (runStart - lineStart) + ":" + (i + 1 - runStart));
+                    runStart = -1;
+                }
+
+                line++;
+                lineStart = i + 1;
+            }
+        }
+
+        if (runStart >= 0) {
+            runs.add(line + ":" + (runStart - lineStart) + ":" + (left.length - runStart));
+        }
+
+        return runs;
+    }
+}
@@ -0,0 +1,72 @@
+package com.waez.jsondiff.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompareKernelsTest {
+
+    @Test
+    public void testScalarKernelMatchesByteByByteComparison() {
+        assertMatchesByteByByteComparison(new ScalarCompareKernel());
+    }
+
+    @Test
+    public void testFastestKernelMatchesByteByByteComparison() {
+        assertMatchesByteByByteComparison(CompareKernels.fastest());
+    }
+
+    @Test
+    public void testKernelStopsAtNewLines() {
+        CompareKernel kernel = CompareKernels.fastest();
+        ByteBuffer left = ByteBuffer.wrap(new byte[200]);
+        ByteBuffer right = ByteBuffer.wrap(new byte[200]);
+
+        left.put(150, (byte) '\n');
+        right.put(150, (byte) '\n');
+
+        assertEquals(150, kernel.skipEqual(left, right, 0, 200, 0));
+        assertEquals(151, kernel.skipDifferent(left, ByteBuffer.wrap(new byte[200]), 151, 200, 0));
+        assertEquals(200, kernel.skipEqual(left, right, 151, 200, 0));
+    }
+
+    private static void assertMatchesByteByByteComparison(final CompareKernel kernel) {
+        Random random = new Random(42);
+
+        for (int round = 0; round < 200; round++) {
+            int length = random.nextInt(400);
+            int shift = random.nextInt(8);
+            ByteBuffer left = round % 2 == 0 ? ByteBuffer.allocate(length) : ByteBuffer.allocateDirect(length);
+            ByteBuffer right = round % 2 == 0 ? ByteBuffer.allocate(length + shift)
+                    : ByteBuffer.allocateDirect(length + shift);
+
+            for (int i = 0; i < length; i++) {
+                byte value = (byte) (random.nextInt(500) == 0 ? '\n' : 'a' + random.nextInt(2));
+
+                left.put(i, value);
+                right.put(i + shift, random.nextInt(1 << round % 8) == 0 ? (byte) 'z' : value);
+            }
+
+            int from = length == 0 ? 0 : random.nextInt(length);
+
+            assertEquals(skip(left, right, from, length, shift, true),
+                    kernel.skipEqual(left, right, from, length, shift));
+            assertEquals(skip(left, right, from, length, shift, false),
+                    kernel.skipDifferent(left, right, from, length, shift));
+        }
+    }
+
+    private static int skip(final ByteBuffer left, final ByteBuffer right, final int from, final int to,
+            final int shift, final boolean equal) {
+        int i = from;
+
+        while (i < to && left.get(i) != '\n' && (left.get(i) == right.get(i + shift)) == equal) {
+            i++;
+        }
+
+        return i;
+    }
+}
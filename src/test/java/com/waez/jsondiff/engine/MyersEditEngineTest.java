@@ -0,0 +1,210 @@
+package com.waez.jsondiff.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.waez.jsondiff.store.FilePart;
+import com.waez.jsondiff.store.MemoryPart;
+import com.waez.jsondiff.store.PartReader;
+
+public class MyersEditEngineTest {
+
+    @Test
+    public void testInsertion() throws IOException {
+        List<String> edits = diff("abcdef", "abcXYdef", new MyersEditEngine());
+
+        assertEquals(1, edits.size());
+        assertEquals("INSERT:3:0:3:2", edits.get(0));
+    }
+
+    @Test
+    public void testDeletion() throws IOException {
+        List<String> edits = diff("abcXYdef", "abcdef", new MyersEditEngine());
+
+        assertEquals(1, edits.size());
+        assertEquals("DELETE:3:2:3:0", edits.get(0));
+    }
+
+    @Test
+    public void testAdjacentDeletionAndInsertionAreAReplacement() throws IOException {
+        List<String> edits = diff("{\"a\":1}", "{\"a\":22,\"b\":3}", new MyersEditEngine());
+
+        assertEquals(1, edits.size());
+        assertEquals("REPLACE:5:1:5:8", edits.get(0));
+    }
+
+    @Test
+    public void testEmptySides() throws IOException {
+        assertEquals("INSERT:0:0:0:3", diff("", "abc", new MyersEditEngine()).get(0));
+        assertEquals("DELETE:0:3:0:0", diff("abc", "", new MyersEditEngine()).get(0));
+        assertEquals(0, diff("abc", "abc", new MyersEditEngine()).size());
+    }
+
+    @Test
+    public void testEditsAreTheShortest() throws IOException {
+        Random random = new Random(42);
+
+        for (int round = 0; round < 200; round++) {
+            byte[] left = randomBytes(random, random.nextInt(60));
+            byte[] right = mutate(random, left);
+
+            List<long[]> edits = collect(left, right, new MyersEditEngine());
+
+            assertArrayEquals(right, apply(left, right, edits));
+            assertEquals(left.length + right.length - 2 * lcs(left, right), changed(edits));
+        }
+    }
+
+    @Test
+    public void testSpentCostStillGivesRightEdits() throws IOException {
+        Random random = new Random(7);
+        byte[] left = randomBytes(random, 2000);
+        byte[] right = mutate(random, left);
+
+        List<long[]> shortest = collect(left, right, new MyersEditEngine());
+        List<long[]> capped = collect(left, right, new MyersEditEngine(100));
+
+        assertArrayEquals(right, apply(left, right, capped));
+        assertEquals(true, changed(capped) > changed(shortest));
+    }
+
+    @Test
+    public void testNoCostReportsASingleReplacement() throws IOException {
+        List<String> edits = diff("aaXbbYcc", "aaZbbcc", new MyersEditEngine(0));
+
+        assertEquals(1, edits.size());
+        assertEquals("REPLACE:2:4:2:3", edits.get(0));
+    }
+
+    @Test
+    public void testSidesAddingUpToMoreThanAnIntAreSearched() throws IOException {
+        // A sparse file takes no disk, and just the pages around its ends
+        // are read, since the only byte of the right side matches none.
+        Path leftPath = Files.createTempFile("left", ".tmp");
+
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(leftPath.toFile(), "rw")) {
+                file.setLength(Integer.MAX_VALUE);
+                file.write('a');
+                file.seek(Integer.MAX_VALUE - 1);
+                file.write('a');
+            }
+
+            List<String> edits = new ArrayList<>();
+
+            try (PartReader leftReader = new FilePart(leftPath).open();
+                    PartReader rightReader = new MemoryPart("b".getBytes()).open()) {
+                new MyersEditEngine().diff(leftReader, rightReader, (type, leftOffset, leftLength, rightOffset,
+                        rightLength) -> edits.add(type + ":" + leftOffset + ":" + leftLength + ":" + rightOffset
+                                + ":" + rightLength));
+            }
+
+            assertEquals(1, edits.size());
+            assertEquals("REPLACE:0:" + Integer.MAX_VALUE + ":0:1", edits.get(0));
+        } finally {
+            Files.deleteIfExists(leftPath);
+        }
+    }
+
+    private static List<String> diff(String left, String right, EditEngine engine) throws IOException {
+        List<String> edits = new ArrayList<>();
+
+        for (long[] edit : collect(left.getBytes(), right.getBytes(), engine)) {
+            edits.add(EditType.values()[(int) edit[0]] + ":" + edit[1] + ":" + edit[2] + ":" + edit[3] + ":"
+                    + edit[4]);
+        }
+
+        return edits;
+    }
+
+    private static List<long[]> collect(byte[] left, byte[] right, EditEngine engine) throws IOException {
+        List<long[]> edits = new ArrayList<>();
+
+        try (PartReader leftReader = new MemoryPart(left).open();
+                PartReader rightReader = new MemoryPart(right).open()) {
+            engine.diff(leftReader, rightReader, (type, leftOffset, leftLength, rightOffset, rightLength) -> edits
+                    .add(new long[] { type.ordinal(), leftOffset, leftLength, rightOffset, rightLength }));
+        }
+
+        return edits;
+    }
+
+    /**
+     * Rebuilds the right part from the left one and the edits.
+     */
+    private static byte[] apply(byte[] left, byte[] right, List<long[]> edits) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int position = 0;
+
+        for (long[] edit : edits) {
+            out.write(left, position, (int) edit[1] - position);
+            out.write(right, (int) edit[3], (int) edit[4]);
+            position = (int) (edit[1] + edit[2]);
+        }
+
+        out.write(left, position, left.length - position);
+
+        return out.toByteArray();
+    }
+
+    private static long changed(List<long[]> edits) {
+        return edits.stream().mapToLong(edit -> edit[2] + edit[4]).sum();
+    }
+
+    private static int lcs(byte[] left, byte[] right) {
+        int[][] lengths = new int[left.length + 1][right.length + 1];
+
+        for (int i = 1; i <= left.length; i++) {
+            for (int j = 1; j <= right.length; j++) {
+                lengths[i][j] = left[i - 1] == right[j - 1] ? lengths[i - 1][j - 1] + 1
+                        : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+
+        return lengths[left.length][right.length];
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(4));
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Inserts, deletes and replaces a few random bytes.
+     */
+    private static byte[] mutate(Random random, byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte b : bytes) {
+            int dice = random.nextInt(10);
+
+            if (dice == 0) {
+                continue;
+            }
+
+            if (dice == 1) {
+                out.write('a' + random.nextInt(4));
+            }
+
+            out.write(dice == 2 ? 'a' + random.nextInt(4) : b);
+        }
+
+        return out.toByteArray();
+    }
+}
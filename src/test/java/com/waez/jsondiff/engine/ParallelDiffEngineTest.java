@@ -0,0 +1,80 @@
+package com.waez.jsondiff.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.waez.jsondiff.store.FilePart;
+import com.waez.jsondiff.store.PartReader;
+
+public class ParallelDiffEngineTest {
+
+    @Test
+    public void testDiffJoinsRunsAcrossChunks() throws IOException {
+        byte[] left = "aaaaaaaaaa\naaaaaaaaa".getBytes();
+        byte[] right = "aaabbbbbbb\naabbbbbba".getBytes();
+
+        List<String> runs = diff(left, right, new ParallelDiffEngine(4, 4, 2));
+
+        assertEquals(2, runs.size());
+        assertEquals("0:3:7", runs.get(0));
+        assertEquals("1:2:6", runs.get(1));
+    }
+
+    @Test
+    public void testDiffMatchesSequentialEngine() throws IOException {
+        Random random = new Random(7);
+
+        for (int round = 0; round < 50; round++) {
+            byte[] left = new byte[random.nextInt(500)];
+
+            for (int i = 0; i < left.length; i++) {
+                left[i] = random.nextInt(12) == 0 ? (byte) '\n' : (byte) 'a';
+            }
+
+            byte[] right = left.clone();
+
+            for (int i = 0; i < right.length; i++) {
+                if (random.nextInt(3) == 0) {
+                    right[i] = 'b';
+                }
+            }
+
+            ParallelDiffEngine engine = new ParallelDiffEngine(1 + random.nextInt(4), 1 + random.nextInt(30),
+                    1 + random.nextInt(10));
+
+            assertEquals(diff(left, right, new ByteDiffEngine(16)), diff(left, right, engine));
+        }
+    }
+
+    private static List<String> diff(final byte[] left, final byte[] right, final DiffEngine engine)
+            throws IOException {
+        Path leftPath = Files.createTempFile("tempLeftFile", ".tmp");
+        Path rightPath = Files.createTempFile("tempRightFile", ".tmp");
+
+        try {
+            Files.write(leftPath, left);
+            Files.write(rightPath, right);
+
+            List<String> runs = new ArrayList<>();
+            DiffListener listener = (line, offset, length) -> runs.add(line + ":" + offset + ":" + length);
+
+            try (PartReader leftReader = new FilePart(leftPath).open();
+                    PartReader rightReader = new FilePart(rightPath).open()) {
+                engine.diff(leftReader, rightReader, listener);
+            }
+
+            return runs;
+        } finally {
+            Files.deleteIfExists(leftPath);
+            Files.deleteIfExists(rightPath);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.waez.jsondiff.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.waez.jsondiff.store.MemoryPart;
+import com.waez.jsondiff.store.PartReader;
+
+public class RollingHashEditEngineTest {
+
+    @Test
+    public void testInsertedByteShiftsTheRest() throws IOException {
+        byte[] left = randomBytes(new Random(42), 1000);
+        byte[] right = concat(slice(left, 0, 3), new byte[] { 'x' }, slice(left, 3, 1000));
+
+        List<String> edits = diff(left, right, 16);
+
+        assertEquals(3, edits.size());
+        assertEquals("COPY:0:3:0:3", edits.get(0));
+        assertEquals("INSERT:3:0:3:1", edits.get(1));
+        assertEquals("COPY:3:997:4:997", edits.get(2));
+    }
+
+    @Test
+    public void testMovedRegionIsCopied() throws IOException {
+        byte[] left = randomBytes(new Random(7), 300);
+        byte[] right = concat(slice(left, 200, 300), slice(left, 0, 200));
+
+        List<String> edits = diff(left, right, 16);
+
+        assertEquals(2, edits.size());
+        assertEquals("COPY:200:100:0:100", edits.get(0));
+        assertEquals("COPY:0:200:100:200", edits.get(1));
+    }
+
+    @Test
+    public void testAppendedBytesAreInserted() throws IOException {
+        byte[] left = randomBytes(new Random(1), 100);
+        byte[] right = concat(left, "tail".getBytes());
+
+        List<String> edits = diff(left, right, 16);
+
+        assertEquals(2, edits.size());
+        assertEquals("COPY:0:100:0:100", edits.get(0));
+        assertEquals("INSERT:100:0:100:4", edits.get(1));
+    }
+
+    @Test
+    public void testShortOrUnrelatedPartsAreInserted() throws IOException {
+        assertEquals("INSERT:0:0:0:3", diff("abcdefgh".getBytes(), "xyz".getBytes(), 4).get(0));
+        assertEquals(0, diff("abcdefgh".getBytes(), new byte[0], 4).size());
+    }
+
+    @Test
+    public void testEditsRebuildTheRightPart() throws IOException {
+        Random random = new Random(3);
+
+        for (int round = 0; round < 50; round++) {
+            byte[] left = randomBytes(random, random.nextInt(2000));
+            byte[] right = shuffle(random, left);
+
+            assertArrayEquals(right, apply(left, right, collect(left, right, 8)));
+        }
+    }
+
+    @Test
+    public void testRepeatedBlocksAreFound() throws IOException {
+        byte[] left = new byte[4096];
+        byte[] right = concat(new byte[] { 1 }, left);
+
+        List<String> edits = diff(left, right, 64);
+
+        assertEquals("INSERT:0:0:0:1", edits.get(0));
+        assertEquals("COPY:0:4096:1:4096", edits.get(1));
+    }
+
+    private static List<String> diff(byte[] left, byte[] right, int blockSize) throws IOException {
+        List<String> edits = new ArrayList<>();
+
+        for (long[] edit : collect(left, right, blockSize)) {
+            edits.add(EditType.values()[(int) edit[0]] + ":" + edit[1] + ":" + edit[2] + ":" + edit[3] + ":"
+                    + edit[4]);
+        }
+
+        return edits;
+    }
+
+    private static List<long[]> collect(byte[] left, byte[] right, int blockSize) throws IOException {
+        List<long[]> edits = new ArrayList<>();
+
+        try (PartReader leftReader = new MemoryPart(left).open();
+                PartReader rightReader = new MemoryPart(right).open()) {
+            new RollingHashEditEngine(blockSize).diff(leftReader, rightReader,
+                    (type, leftOffset, leftLength, rightOffset, rightLength) -> edits
+                            .add(new long[] { type.ordinal(), leftOffset, leftLength, rightOffset, rightLength }));
+        }
+
+        return edits;
+    }
+
+    /**
+     * Rebuilds the right part from the copies of the left one and the bytes
+     * inserted.
+     */
+    private static byte[] apply(byte[] left, byte[] right, List<long[]> edits) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (long[] edit : edits) {
+            assertEquals(out.size(), edit[3]);
+
+            if (EditType.values()[(int) edit[0]] == EditType.COPY) {
+                out.write(left, (int) edit[1], (int) edit[2]);
+            } else {
+                out.write(right, (int) edit[3], (int) edit[4]);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Cuts the bytes in a few pieces, putting them back in another order with
+     * some random bytes in between.
+     */
+    private static byte[] shuffle(Random random, byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pieces = 1 + random.nextInt(5);
+
+        for (int i = 0; i < pieces; i++) {
+            int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            int to = from + random.nextInt(bytes.length - from + 1);
+
+            out.write(bytes, from, to - from);
+            out.write(random.nextInt(256));
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] slice(byte[] bytes, int from, int to) {
+        byte[] slice = new byte[to - from];
+        System.arraycopy(bytes, from, slice, 0, slice.length);
+        return slice;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,330 @@
+package com.waez.jsondiff.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.waez.jsondiff.store.MemoryPart;
+import com.waez.jsondiff.store.PartReader;
+
+public class StructuralDiffEngineTest {
+
+    @Test
+    public void testReformattedAndReorderedDocumentsAreEqual() throws IOException {
+        List<String> changes = diff("{\"a\":1,\"b\":{\"c\":[1,2],\"d\":\"x\"}}",
+                "{ \"b\" : { \"d\" : \"x\", \"c\" : [ 1, 2 ] },\n  \"a\" : 1 }");
+
+        assertEquals(0, changes.size());
+    }
+
+    @Test
+    public void testChangedValuesAreReportedByPath() throws IOException {
+        List<String> changes = diff("{\"a\":1,\"b\":{\"c\":\"x\",\"d\":true}}",
+                "{\"a\":2,\"b\":{\"c\":\"y\",\"d\":true}}");
+
+        assertEquals(2, changes.size());
+        assertEquals("CHANGED /a 1 2", changes.get(0));
+        assertEquals("CHANGED /b/c \"x\" \"y\"", changes.get(1));
+    }
+
+    @Test
+    public void testAddedAndRemovedMembers() throws IOException {
+        List<String> changes = diff("{\"a\":1,\"b\":{\"x\":[1]},\"c\":3}",
+                "{\"a\":1,\"c\":4,\"d\":{\"y\":null}}");
+
+        assertEquals(3, changes.size());
+        assertEquals("REMOVED /b {\"x\":[1]} null", changes.get(0));
+        assertEquals("CHANGED /c 3 4", changes.get(1));
+        assertEquals("ADDED /d null {\"y\":null}", changes.get(2));
+    }
+
+    @Test
+    public void testReorderedMembersAreComparedInDepth() throws IOException {
+        List<String> changes = diff("{\"a\":{\"x\":1,\"y\":[1,2]},\"b\":{\"z\":1}}",
+                "{\"b\":{\"z\":1},\"a\":{\"y\":[1,3],\"x\":1}}");
+
+        assertEquals(1, changes.size());
+        assertEquals("CHANGED /a/y/1 2 3", changes.get(0));
+    }
+
+    @Test
+    public void testArraysAreComparedByPosition() throws IOException {
+        List<String> changes = diff("[1,{\"a\":1},3]", "[1,{\"a\":2},3,[4]]");
+
+        assertEquals(2, changes.size());
+        assertEquals("CHANGED /1/a 1 2", changes.get(0));
+        assertEquals("ADDED /3 null [4]", changes.get(1));
+
+        changes = diff("[1,2,3]", "[1]");
+
+        assertEquals(2, changes.size());
+        assertEquals("REMOVED /1 2 null", changes.get(0));
+        assertEquals("REMOVED /2 3 null", changes.get(1));
+    }
+
+    @Test
+    public void testDifferentTypesAreChanged() throws IOException {
+        List<String> changes = diff("{\"a\":[1],\"b\":1,\"c\":\"1\"}", "{\"a\":{\"0\":1},\"b\":1.0,\"c\":1}");
+
+        assertEquals(3, changes.size());
+        assertEquals("CHANGED /a [1] {\"0\":1}", changes.get(0));
+        assertEquals("CHANGED /b 1 1.0", changes.get(1));
+        assertEquals("CHANGED /c \"1\" 1", changes.get(2));
+    }
+
+    @Test
+    public void testNamesAreEscapedInPaths() throws IOException {
+        List<String> changes = diff("{\"a/b\":{\"m~n\":1}}", "{\"a/b\":{\"m~n\":2}}");
+
+        assertEquals("CHANGED /a~1b/m~0n 1 2", changes.get(0));
+    }
+
+    @Test
+    public void testLongValuesAreCut() throws IOException {
+        List<String> changes = new ArrayList<>();
+
+        diff("{\"a\":\"abcdefghij\"}", "{\"b\":[1,2,3,4,5,6]}", new StructuralDiffEngine(5), changes);
+
+        assertEquals("REMOVED /a \"abcd... null", changes.get(0));
+        assertEquals("ADDED /b null [1,2,...", changes.get(1));
+    }
+
+    @Test
+    public void testBigDocumentsAreStreamed() throws IOException {
+        StringBuilder left = new StringBuilder("[");
+        StringBuilder right = new StringBuilder("[");
+
+        for (int i = 0; i < 20000; i++) {
+            // Reordered members, so the one that changed is parsed again from
+            // where it is, far beyond the first buffer.
+            left.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":{\"v\":\"n")
+                    .append(i).append("\"}}");
+            right.append(i == 0 ? "" : ",").append("{\"name\":{\"v\":\"n").append(i == 15000 ? -1 : i)
+                    .append("\"},\"id\":").append(i).append("}");
+        }
+
+        List<String> changes = diff(left.append("]").toString(), right.append("]").toString());
+
+        assertEquals(1, changes.size());
+        assertEquals("CHANGED /15000/name/v \"n15000\" \"n-1\"", changes.get(0));
+    }
+
+    @Test
+    public void testUnorderedArraysMatchElementsByHash() throws IOException {
+        StructuralDiffEngine engine = new StructuralDiffEngine(1024, true, null);
+
+        assertEquals(0, diff("[1,{\"a\":2},[3,4],\"x\"]", "[\"x\",[3,4],{\"a\":2},1]", engine).size());
+
+        List<String> changes = diff("[1,1,2,{\"a\":2}]", "[{\"a\":3},2,1]", engine);
+
+        assertEquals(3, changes.size());
+        assertEquals("ADDED /0 null {\"a\":3}", changes.get(0));
+        assertEquals("REMOVED /1 1 null", changes.get(1));
+        assertEquals("REMOVED /3 {\"a\":2} null", changes.get(2));
+    }
+
+    @Test
+    public void testUnorderedArraysMatchElementsByKey() throws IOException {
+        StructuralDiffEngine engine = new StructuralDiffEngine(1024, false, "/meta/id");
+
+        List<String> changes = diff(
+                "{\"items\":[{\"meta\":{\"id\":1},\"v\":\"a\"},{\"meta\":{\"id\":2},\"v\":\"b\"},"
+                        + "{\"meta\":{\"id\":3},\"v\":\"c\"}]}",
+                "{\"items\":[{\"v\":\"c\",\"meta\":{\"id\":3}},{\"meta\":{\"id\":4},\"v\":\"d\"},"
+                        + "{\"meta\":{\"id\":1},\"v\":\"z\"}]}",
+                engine);
+
+        assertEquals(3, changes.size());
+        assertEquals("ADDED /items/1 null {\"meta\":{\"id\":4},\"v\":\"d\"}", changes.get(0));
+        assertEquals("CHANGED /items/2/v \"a\" \"z\"", changes.get(1));
+        assertEquals("REMOVED /items/1 {\"meta\":{\"id\":2},\"v\":\"b\"} null", changes.get(2));
+    }
+
+    @Test
+    public void testUnorderedArraysIgnoreTheOrderOfNestedArrays() throws IOException {
+        StructuralDiffEngine engine = new StructuralDiffEngine(1024, true, null);
+
+        List<String> changes = diff("[{\"id\":1,\"tags\":[\"a\",\"b\"]},[[1,2],[3]]]",
+                "[[[3],[2,1]],{\"tags\":[\"b\",\"a\"],\"id\":1}]", engine);
+
+        assertEquals(0, changes.size());
+
+        changes = diff("{\"x\":[{\"id\":1,\"tags\":[\"a\",\"b\"]}]}",
+                "{\"x\":[{\"id\":1,\"tags\":[\"b\",\"c\"]}]}", new StructuralDiffEngine(1024, true, "/id"));
+
+        assertEquals(2, changes.size());
+        assertEquals("ADDED /x/0/tags/1 null \"c\"", changes.get(0));
+        assertEquals("REMOVED /x/0/tags/0 \"a\" null", changes.get(1));
+
+        // By position, the same nested arrays are different.
+        assertEquals(2, diff("[{\"tags\":[\"a\",\"b\"]}]", "[{\"tags\":[\"b\",\"a\"]}]").size());
+    }
+
+    @Test
+    public void testShuffledBigArrayHasNoChanges() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+
+        for (int i = 0; i < 100000; i++) {
+            ids.add(i);
+        }
+
+        StringBuilder left = new StringBuilder("[");
+
+        for (int id : ids) {
+            left.append(id == 0 ? "" : ",").append("{\"id\":").append(id).append(",\"v\":").append(id % 7).append("}");
+        }
+
+        Collections.shuffle(ids, new Random(42));
+
+        StringBuilder right = new StringBuilder("[");
+
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            right.append(i == 0 ? "" : ",").append("{\"v\":").append(id == 500 ? 8 : id % 7).append(",\"id\":")
+                    .append(id).append("}");
+        }
+
+        List<String> changes = diff(left.append("]").toString(), right.append("]").toString(),
+                new StructuralDiffEngine(1024, true, "/id"));
+
+        assertEquals(1, changes.size());
+        assertEquals("CHANGED /" + ids.indexOf(500) + "/v 3 8", changes.get(0));
+    }
+
+    @Test
+    public void testWideObjectsAreMatchedInPasses() throws IOException {
+        StringBuilder left = new StringBuilder("{\"first\":0");
+        StringBuilder right = new StringBuilder("{\"first\":0");
+        List<Integer> order = new ArrayList<>();
+
+        for (int member = 0; member < 100; member++) {
+            left.append(",\"m").append(member).append("\":{\"v\":").append(member).append("}");
+            order.add(member);
+        }
+
+        Collections.shuffle(order, new Random(42));
+
+        for (int member : order) {
+            if (member % 10 != 5) {
+                right.append(",\"m").append(member).append("\":{\"v\":").append(member % 10 == 0 ? -1 : member)
+                        .append("}");
+            }
+        }
+
+        right.append(",\"added\":true}");
+        left.append("}");
+
+        List<String> changes = diff(left.toString(), right.toString(), new StructuralDiffEngine(1024, 256, 8, false,
+                null));
+        List<String> expected = diff(left.toString(), right.toString());
+
+        Collections.sort(changes);
+        Collections.sort(expected);
+
+        assertEquals(21, changes.size());
+        assertEquals(expected, changes);
+        assertEquals("ADDED /added null true", changes.get(0));
+        assertEquals("CHANGED /m0/v 0 -1", changes.get(1));
+        assertEquals("REMOVED /m95 {\"v\":95} null", changes.get(20));
+    }
+
+    @Test
+    public void testDeepDocumentsAreRejected() throws Exception {
+        StringBuilder deep = new StringBuilder();
+
+        for (int level = 0; level < 100000; level++) {
+            deep.append("[");
+        }
+
+        try {
+            diff(deep.toString(), deep.toString());
+            fail("JsonProcessingException expected");
+        } catch (JsonProcessingException e) {
+            assertEquals("Objects and arrays nested deeper than 256 levels", e.getOriginalMessage());
+        }
+    }
+
+    @Test
+    public void testDocumentsAsDeepAsTheMaximumFitInTheStack() throws Exception {
+        StringBuilder left = new StringBuilder();
+        StringBuilder right = new StringBuilder();
+
+        // Every level has its members reordered, which takes the most stack.
+        for (int level = 1; level < StructuralDiffEngine.DEFAULT_MAX_DEPTH; level++) {
+            left.append("{\"b\":").append(level).append(",\"a\":");
+            right.append("{\"a\":");
+        }
+
+        left.append("[1]");
+        right.append("[2]");
+
+        for (int level = StructuralDiffEngine.DEFAULT_MAX_DEPTH - 1; level > 0; level--) {
+            left.append("}");
+            right.append(",\"b\":").append(level).append("}");
+        }
+
+        List<String> changes = new ArrayList<>();
+        Throwable[] failure = new Throwable[1];
+
+        // A stack as small as the default one of the threads of the server.
+        Thread thread = new Thread(null, () -> {
+            try {
+                diff(left.toString(), right.toString(), new StructuralDiffEngine(), changes);
+            } catch (IOException | RuntimeException | Error e) {
+                failure[0] = e;
+            }
+        }, "deep-diff", 1024 * 1024);
+
+        thread.start();
+        thread.join();
+
+        assertEquals(null, failure[0]);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).endsWith("/a/0 1 2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testArrayKeyMustBeAPointer() {
+        new StructuralDiffEngine(1024, true, "id");
+    }
+
+    @Test
+    public void testInvalidJsonFails() throws IOException {
+        try {
+            diff("{\"a\":1}", "{\"a\":");
+            fail("JsonProcessingException expected");
+        } catch (JsonProcessingException e) {
+            // Expected, the right document ends before the value.
+        }
+    }
+
+    private static List<String> diff(String left, String right) throws IOException {
+        return diff(left, right, new StructuralDiffEngine());
+    }
+
+    private static List<String> diff(String left, String right, StructuralDiffEngine engine) throws IOException {
+        List<String> changes = new ArrayList<>();
+
+        diff(left, right, engine, changes);
+
+        return changes;
+    }
+
+    private static void diff(String left, String right, StructuralDiffEngine engine, List<String> changes)
+            throws IOException {
+        try (PartReader leftReader = new MemoryPart(left.getBytes()).open();
+                PartReader rightReader = new MemoryPart(right.getBytes()).open()) {
+            engine.diff(leftReader, rightReader, (type, path, oldValue, newValue) -> changes
+                    .add(type + " " + path + " " + oldValue + " " + newValue));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.waez.jsondiff.functional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Collections;
 import java.util.stream.Collectors;
 
 import org.junit.Test;
@@ -11,6 +12,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -18,6 +20,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.waez.jsondiff.JsondiffApplication;
+import com.waez.jsondiff.config.SmileHttpMessageConverter;
 import com.waez.jsondiff.controller.JsonDiffController;
 
 import dto.DiffResponseDTO;
@@ -76,6 +79,30 @@ public class ApplicationIT {
                 .collect(Collectors.toList())).isNotEmpty();
     }
 
+    @Test
+    public void testBothPartsAsSmile() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        restTemplate.postForEntity("/v1/diff/11/left", new HttpEntity<>("{ \"binary\": \"YWFhYWFh\" }", headers),
+                String.class);
+        restTemplate.postForEntity("/v1/diff/11/right", new HttpEntity<>("{ \"binary\": \"YWFhYWJi\" }", headers),
+                String.class);
+
+        HttpHeaders accept = new HttpHeaders();
+        accept.setAccept(
+                Collections.singletonList(MediaType.valueOf(SmileHttpMessageConverter.APPLICATION_SMILE_VALUE)));
+
+        ResponseEntity<DiffResponseDTO> diffResponse = restTemplate.exchange("/v1/diff/11", HttpMethod.GET,
+                new HttpEntity<>(accept), DiffResponseDTO.class);
+
+        assertThat(diffResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(diffResponse.getHeaders().getContentType().toString())
+                .startsWith(SmileHttpMessageConverter.APPLICATION_SMILE_VALUE);
+        assertThat(diffResponse.getBody().getMessage()).isEqualTo("Diff successfully calculated");
+        assertThat(diffResponse.getBody().getLines()).size().isEqualTo(1);
+    }
+
     @Test
     public void testBothPartsSameContent() {
         HttpHeaders headers = new HttpHeaders();
@@ -1,29 +1,58 @@
 package com.waez.jsondiff.service;
 
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.util.ObjectUtils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.cache.Cache;
+import com.waez.jsondiff.config.DiffProperties;
+import com.waez.jsondiff.engine.BlockIndexDiffEngine;
+import com.waez.jsondiff.engine.DiffEngine;
 import com.waez.jsondiff.model.DiffObject;
+import com.waez.jsondiff.model.DiffQuery;
+import com.waez.jsondiff.model.DiffSide;
+import com.waez.jsondiff.store.FilePart;
+import com.waez.jsondiff.store.MemoryPart;
+import com.waez.jsondiff.store.Part;
+import com.waez.jsondiff.store.PartReader;
 
 import dto.DiffResponseDTO;
+import dto.DiffSummaryDTO;
 import dto.LineDTO;
 
 public class DiffServiceTest {
@@ -31,6 +60,12 @@ public class DiffServiceTest {
     @Mock
     private Cache<Long, DiffObject> cache;
 
+    @Spy
+    private DiffProperties properties = new DiffProperties();
+
+    @Spy
+    private PartReaper reaper = new PartReaper(new DiffProperties());
+
     @InjectMocks
     private DiffService underTest;
 
@@ -55,8 +90,8 @@ public class DiffServiceTest {
             Files.write(tempRightPath, rightContent, StandardOpenOption.CREATE);
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setLeftPart(Optional.of(tempLeftPath));
-            diffObject.setRightPart(Optional.of(tempRightPath));
+            diffObject.setLeftPart(Optional.of(new FilePart(tempLeftPath)));
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
 
             DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
 
@@ -96,8 +131,8 @@ public class DiffServiceTest {
             Files.write(tempRightPath, rightContent, StandardOpenOption.CREATE);
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setLeftPart(Optional.of(tempLeftPath));
-            diffObject.setRightPart(Optional.of(tempRightPath));
+            diffObject.setLeftPart(Optional.of(new FilePart(tempLeftPath)));
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
 
             DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
 
@@ -137,8 +172,8 @@ public class DiffServiceTest {
             Files.write(tempRightPath, rightContent, StandardOpenOption.CREATE);
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setLeftPart(Optional.of(tempLeftPath));
-            diffObject.setRightPart(Optional.of(tempRightPath));
+            diffObject.setLeftPart(Optional.of(new FilePart(tempLeftPath)));
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
 
             DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
 
@@ -178,8 +213,8 @@ public class DiffServiceTest {
             Files.write(tempRightPath, rightContent, StandardOpenOption.CREATE);
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setLeftPart(Optional.of(tempLeftPath));
-            diffObject.setRightPart(Optional.of(tempRightPath));
+            diffObject.setLeftPart(Optional.of(new FilePart(tempLeftPath)));
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
 
             DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
 
@@ -219,8 +254,8 @@ public class DiffServiceTest {
             Files.write(tempRightPath, rightContent, StandardOpenOption.CREATE);
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setLeftPart(Optional.of(tempLeftPath));
-            diffObject.setRightPart(Optional.of(tempRightPath));
+            diffObject.setLeftPart(Optional.of(new FilePart(tempLeftPath)));
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
 
             DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
 
@@ -256,14 +291,17 @@ public class DiffServiceTest {
             Files.write(tempRightPath, rightContent, StandardOpenOption.CREATE);
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setLeftPart(Optional.of(tempLeftPath));
-            diffObject.setRightPart(Optional.of(tempRightPath));
+            diffObject.setLeftPart(Optional.of(new FilePart(tempLeftPath)));
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
 
             DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
 
             assertTrue(diffResult != null);
             assertTrue("Data is NOT the same size".equals(diffResult.getMessage()));
             assertTrue(ObjectUtils.isEmpty(diffResult.getLines()));
+            assertTrue(diffResult.getEdits().size() == 1);
+            assertTrue("Edit [type=INSERT, leftOffset=7, leftLength=0, rightOffset=7, rightLength=7]"
+                    .equals(diffResult.getEdits().get(0).toString()));
         } catch (IOException e) {
             throw e;
         } finally {
@@ -277,6 +315,29 @@ public class DiffServiceTest {
         }
     }
 
+    @Test
+    public void testMakeDiffSamePartFile() throws IOException {
+        Path tempPath = null;
+
+        try {
+            tempPath = Files.createTempFile("tempLeftFile", ".tmp");
+            Files.write(tempPath, new String("aaaaaaa").getBytes(), StandardOpenOption.CREATE);
+
+            DiffObject diffObject = new DiffObject(1l);
+            diffObject.setLeftPart(Optional.of(new FilePart(tempPath)));
+            diffObject.setRightPart(Optional.of(new FilePart(tempPath)));
+
+            DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
+
+            assertTrue("Data is exactly the same".equals(diffResult.getMessage()));
+            assertTrue(ObjectUtils.isEmpty(diffResult.getLines()));
+        } finally {
+            if (tempPath != null) {
+                Files.deleteIfExists(tempPath);
+            }
+        }
+    }
+
     @Test
     public void testAddNewDiffWithLeftPart() throws Exception {
         Path tempLeftPath = null;
@@ -287,13 +348,57 @@ public class DiffServiceTest {
             String leftContent = new String("{ \"binary\": \"YWFhYWFh\" }");
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setLeftPart(Optional.of(tempLeftPath));
+            diffObject.setLeftPart(Optional.of(new FilePart(tempLeftPath)));
 
-            URI leftPartURI = underTest.addNewDiff(diffObject, leftContent, true);
+            URI leftPartURI = underTest.addNewDiff(diffObject, new ByteArrayInputStream(leftContent.getBytes()), true);
 
-            assertTrue(tempLeftPath.toFile().toURI().equals(leftPartURI));
-        } catch (IOException e) {
-            throw e;
+            assertTrue(diffObject.getLeftPart().get().getUri().equals(leftPartURI));
+
+            reaper.flush();
+
+            assertTrue(!Files.exists(tempLeftPath));
+        } finally {
+            if (tempLeftPath != null) {
+                Files.deleteIfExists(tempLeftPath);
+            }
+        }
+    }
+
+    @Test
+    public void testPartReplacedBeforeItIsOpenedIsReadFromTheNewOne() throws Exception {
+        AtomicBoolean replaced = new AtomicBoolean();
+
+        // The left part is replaced and released right after a diff reads
+        // it, before the diff opens it.
+        DiffObject diffObject = new DiffObject(1l) {
+            @Override
+            public DiffSide getLeft() {
+                DiffSide left = super.getLeft();
+
+                if (replaced.compareAndSet(false, true)) {
+                    try {
+                        underTest.addNewRawDiff(this, new ByteArrayInputStream("aaabaa".getBytes()), true);
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+
+                    reaper.flush();
+                }
+
+                return left;
+            }
+        };
+
+        underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaaaa".getBytes()), true);
+        underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaabaa".getBytes()), false);
+
+        try {
+            DiffResponseDTO diffResult = underTest.makeShiftedDiff(diffObject);
+
+            assertTrue(replaced.get());
+            assertTrue("Data is exactly the same".equals(diffResult.getMessage()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
         }
     }
 
@@ -307,13 +412,592 @@ public class DiffServiceTest {
             String rightContent = new String("{ \"binary\": \"YWFhYWFh\" }");
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setRightPart(Optional.of(tempRightPath));
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
 
-            URI rightPartURI = underTest.addNewDiff(diffObject, rightContent, false);
+            URI rightPartURI = underTest.addNewDiff(diffObject, new ByteArrayInputStream(rightContent.getBytes()),
+                    false);
 
-            assertTrue(tempRightPath.toFile().toURI().equals(rightPartURI));
-        } catch (IOException e) {
-            throw e;
+            assertTrue(diffObject.getRightPart().get().getUri().equals(rightPartURI));
+
+            reaper.flush();
+
+            assertTrue(!Files.exists(tempRightPath));
+        } finally {
+            if (tempRightPath != null) {
+                Files.deleteIfExists(tempRightPath);
+            }
+        }
+    }
+
+    @Test
+    public void testAddNewDiffDecodesBinaryField() throws Exception {
+        String leftContent = new String("{ \"other\": { \"binary\": \"YmJi\" }, \"binary\": \"YWFhYWFh\" }");
+
+        DiffObject diffObject = new DiffObject(1l);
+
+        underTest.addNewDiff(diffObject, new ByteArrayInputStream(leftContent.getBytes()), true);
+
+        assertTrue("aaaaaa".equals(contentOf(diffObject.getLeftPart().get())));
+    }
+
+    @Test
+    public void testAddNewDiffWithoutBinaryKeepsPreviousContent() throws Exception {
+        Path tempLeftPath = null;
+
+        try {
+            tempLeftPath = Files.createTempFile("tempLeftFile", ".tmp");
+            Files.write(tempLeftPath, new String("aaaaaaa").getBytes(), StandardOpenOption.CREATE);
+
+            Part leftPart = new FilePart(tempLeftPath);
+
+            DiffObject diffObject = new DiffObject(1l);
+            diffObject.setLeftPart(Optional.of(leftPart));
+
+            try {
+                underTest.addNewDiff(diffObject, new ByteArrayInputStream("{ \"other\": 1 }".getBytes()), true);
+                fail("IOException expected");
+            } catch (IOException e) {
+                assertTrue(diffObject.getLeftPart().get() == leftPart);
+                assertTrue("aaaaaaa".equals(new String(Files.readAllBytes(tempLeftPath))));
+            }
+        } finally {
+            if (tempLeftPath != null) {
+                Files.deleteIfExists(tempLeftPath);
+            }
+        }
+    }
+
+    @Test
+    public void testAddNewRawDiffWithRightPart() throws Exception {
+        Path tempRightPath = null;
+
+        try {
+            tempRightPath = Files.createTempFile("tempRightFile", ".tmp");
+            Files.write(tempRightPath, new String("bbbbbbbbbbbb").getBytes(), StandardOpenOption.CREATE);
+
+            DiffObject diffObject = new DiffObject(1l);
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
+
+            URI rightPartURI = underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaaaa".getBytes()),
+                    false);
+
+            assertTrue(diffObject.getRightPart().get().getUri().equals(rightPartURI));
+            assertTrue("aaaaaa".equals(contentOf(diffObject.getRightPart().get())));
+
+            reaper.flush();
+
+            assertTrue(!Files.exists(tempRightPath));
+        } finally {
+            if (tempRightPath != null) {
+                Files.deleteIfExists(tempRightPath);
+            }
+        }
+    }
+
+    @Test
+    public void testMakeDiffWithSameDigestsDoesNotReadParts() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaaaa".getBytes()), true);
+        underTest.addNewDiff(diffObject, new ByteArrayInputStream("{ \"binary\": \"YWFhYWFh\" }".getBytes()), false);
+
+        assertTrue(diffObject.getLeftMetadata().get().sameContentAs(diffObject.getRightMetadata().get()));
+        assertTrue(diffObject.getLeftMetadata().get().getLength() == 6);
+
+        // Parts are replaced by empty ones, so the answer can only come from the digests.
+        diffObject.setLeftPart(Optional.of(new MemoryPart(new byte[6])));
+        diffObject.setRightPart(Optional.of(new MemoryPart(new byte[6])));
+
+        DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
+
+        assertTrue("Data is exactly the same".equals(diffResult.getMessage()));
+    }
+
+    @Test
+    public void testMakeDiffWithDifferentDigests() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        try {
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaaaa".getBytes()), true);
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaabaa".getBytes()), false);
+
+            assertTrue(!diffObject.getLeftMetadata().get().sameContentAs(diffObject.getRightMetadata().get()));
+
+            DiffResponseDTO diffResult = underTest.makeDiff(diffObject);
+
+            assertTrue("Diff successfully calculated".equals(diffResult.getMessage()));
+            assertTrue(diffResult.getLines().size() == 1);
+        } finally {
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testMakeDiffIsMemoizedUntilAPartChanges() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        try {
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaaaa".getBytes()), true);
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaabaa".getBytes()), false);
+
+            DiffResponseDTO firstResult = underTest.makeDiff(diffObject);
+
+            assertTrue(firstResult == underTest.makeDiff(diffObject));
+
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaaaa".getBytes()), false);
+
+            DiffResponseDTO secondResult = underTest.makeDiff(diffObject);
+
+            assertTrue(firstResult != secondResult);
+            assertTrue("Data is exactly the same".equals(secondResult.getMessage()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testConcurrentMakeDiffIsPerformedOnce() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        byte[] leftContent = new byte[4 * 1024 * 1024];
+        byte[] rightContent = new byte[leftContent.length];
+
+        for (int i = 0; i < rightContent.length; i += 16) {
+            rightContent[i] = 1;
+        }
+
+        // The engine blocks until every other call is waiting, so none of
+        // them can take the result from the memoized ones.
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DiffEngine engine = (left, right, listener) -> {
+            runs.incrementAndGet();
+            running.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+
+            listener.onDifference(0, 0, 1);
+        };
+
+        ReflectionTestUtils.setField(underTest, "diffEngine", engine);
+        ReflectionTestUtils.setField(underTest, "parallelDiffEngine", engine);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream(leftContent), true);
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream(rightContent), false);
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> callers = new CopyOnWriteArrayList<>();
+            List<Future<DiffResponseDTO>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    callers.add(Thread.currentThread());
+                    start.await();
+
+                    return underTest.makeDiff(diffObject);
+                }));
+            }
+
+            start.countDown();
+
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+
+            // One caller runs the engine, the other ones wait for its result.
+            while (callers.size() < 8
+                    || callers.stream().filter(caller -> caller.getState() == Thread.State.WAITING).count() < 8) {
+                Thread.sleep(1);
+            }
+
+            assertTrue(futures.stream().noneMatch(Future::isDone));
+
+            release.countDown();
+
+            DiffResponseDTO expected = futures.get(0).get();
+
+            for (Future<DiffResponseDTO> future : futures) {
+                assertTrue(expected == future.get());
+            }
+
+            assertTrue(runs.get() == 1);
+            assertTrue("Diff successfully calculated".equals(expected.getMessage()));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testStreamDiffWritesSameResponse() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        try {
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaa\naaaa\naaaa".getBytes()), true);
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("abaa\naaaa\nbbaa".getBytes()), false);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            underTest.streamDiff(diffObject, out);
+
+            DiffResponseDTO streamed = new ObjectMapper().readValue(out.toByteArray(), DiffResponseDTO.class);
+            DiffResponseDTO expected = underTest.makeDiff(diffObject);
+
+            assertTrue(expected.getMessage().equals(streamed.getMessage()));
+            assertTrue(streamed.getLines().size() == 2);
+            assertTrue(expected.getLines().toString().equals(streamed.getLines().toString()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testStreamDiffWritesEditsOfDifferentSizes() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        try {
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("{\"a\":1,\"b\":2}".getBytes()), true);
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("{\"a\":1,\"c\":3,\"b\":2}".getBytes()),
+                    false);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            underTest.streamDiff(diffObject, out);
+
+            DiffResponseDTO streamed = new ObjectMapper().readValue(out.toByteArray(), DiffResponseDTO.class);
+            DiffResponseDTO expected = underTest.makeDiff(diffObject);
+
+            assertTrue("Data is NOT the same size".equals(streamed.getMessage()));
+            // The common prefix takes the quote the inserted key starts with.
+            assertTrue("[Edit [type=INSERT, leftOffset=8, leftLength=0, rightOffset=8, rightLength=6]]"
+                    .equals(expected.getEdits().toString()));
+            assertTrue(expected.getEdits().toString().equals(streamed.getEdits().toString()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testShiftedDiffFindsInsertedByte() throws Exception {
+        DiffProperties smallBlocks = new DiffProperties();
+        smallBlocks.getDiff().setShiftBlockSize(8);
+
+        DiffService service = new DiffService(smallBlocks);
+        DiffObject diffObject = new DiffObject(1l);
+
+        try {
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("0123456789abcdefghijklmnopqrstuv".getBytes()), true);
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("0123456789Xabcdefghijklmnopqrstuv".getBytes()), false);
+
+            DiffResponseDTO diffResult = service.makeShiftedDiff(diffObject);
+
+            assertTrue("Diff successfully calculated".equals(diffResult.getMessage()));
+            assertTrue(("[Edit [type=COPY, leftOffset=0, leftLength=10, rightOffset=0, rightLength=10], "
+                    + "Edit [type=INSERT, leftOffset=10, leftLength=0, rightOffset=10, rightLength=1], "
+                    + "Edit [type=COPY, leftOffset=10, leftLength=22, rightOffset=11, rightLength=22]]")
+                            .equals(diffResult.getEdits().toString()));
+
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("0123456789abcdefghijklmnopqrstuv".getBytes()), false);
+
+            assertTrue("Data is exactly the same".equals(service.makeShiftedDiff(diffObject).getMessage()));
+            assertTrue(service.makeShiftedDiff(diffObject).getEdits().isEmpty());
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testStructuralDiffIgnoresFormatting() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        try {
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("{\"a\":1,\"b\":[true]}".getBytes()), true);
+            underTest.addNewRawDiff(diffObject,
+                    new ByteArrayInputStream("{ \"b\": [ true ],\n  \"a\": 1 }".getBytes()), false);
+
+            DiffResponseDTO diffResult = underTest.makeStructuralDiff(diffObject);
+
+            assertTrue("Data is structurally the same".equals(diffResult.getMessage()));
+            assertTrue(diffResult.getChanges().isEmpty());
+
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("{\"b\":[false],\"c\":2}".getBytes()),
+                    false);
+
+            diffResult = underTest.makeStructuralDiff(diffObject);
+
+            assertTrue("Diff successfully calculated".equals(diffResult.getMessage()));
+            assertTrue(("[Change [type=REMOVED, path=/a, oldValue=1, newValue=null], "
+                    + "Change [type=CHANGED, path=/b/0, oldValue=true, newValue=false], "
+                    + "Change [type=ADDED, path=/c, oldValue=null, newValue=2]]")
+                            .equals(diffResult.getChanges().toString()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testStructuralDiffMatchesArrayElementsByKey() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        try {
+            underTest.addNewRawDiff(diffObject,
+                    new ByteArrayInputStream("[{\"id\":1,\"v\":1},{\"id\":2,\"v\":2}]".getBytes()), true);
+            underTest.addNewRawDiff(diffObject,
+                    new ByteArrayInputStream("[{\"id\":2,\"v\":3},{\"id\":1,\"v\":1}]".getBytes()), false);
+
+            assertTrue(underTest.makeStructuralDiff(diffObject).getChanges().size() == 4);
+
+            DiffResponseDTO diffResult = underTest.makeStructuralDiff(diffObject, true, "/id");
+
+            assertTrue("[Change [type=CHANGED, path=/0/v, oldValue=2, newValue=3]]"
+                    .equals(diffResult.getChanges().toString()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testMostlyDifferentPartsAreComparedWhole() throws Exception {
+        DiffProperties smallBlocks = new DiffProperties();
+        smallBlocks.getDiff().setBlockSize(16);
+        smallBlocks.getDiff().setParallelThreshold(64);
+
+        DiffService service = new DiffService(smallBlocks);
+        DiffObject diffObject = new DiffObject(1l);
+
+        char[] left = new char[256];
+        char[] right = new char[256];
+
+        Arrays.fill(left, 'a');
+        Arrays.fill(right, 'b');
+
+        try {
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream(new String(left).getBytes()), true);
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream(new String(right).getBytes()), false);
+
+            Object engine = ReflectionTestUtils.invokeMethod(service, "selectEngine", diffObject.getLeftMetadata(),
+                    diffObject.getRightMetadata(), 256l, DiffQuery.ALL);
+
+            assertTrue(diffObject.getLeftMetadata().get().getBlockIndex().isPresent());
+            assertTrue(engine == ReflectionTestUtils.getField(service, "parallelDiffEngine"));
+
+            engine = ReflectionTestUtils.invokeMethod(service, "selectEngine", diffObject.getLeftMetadata(),
+                    diffObject.getRightMetadata(), 256l, DiffQuery.of(10l, 11l, null, null));
+
+            assertTrue(engine instanceof BlockIndexDiffEngine);
+
+            Arrays.fill(right, 'a');
+            right[100] = 'b';
+
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream(new String(right).getBytes()), false);
+
+            engine = ReflectionTestUtils.invokeMethod(service, "selectEngine", diffObject.getLeftMetadata(),
+                    diffObject.getRightMetadata(), 256l, DiffQuery.ALL);
+
+            assertTrue(engine instanceof BlockIndexDiffEngine);
+            assertTrue("[Line [line=0, offset=100, length=1]]"
+                    .equals(service.makeDiff(diffObject).getLines().toString()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testMakeDiffPagesMatchFullDiff() throws Exception {
+        DiffProperties smallBlocks = new DiffProperties();
+        smallBlocks.getDiff().setBlockSize(16);
+
+        DiffService service = new DiffService(smallBlocks);
+        DiffObject diffObject = new DiffObject(1l);
+
+        StringBuilder left = new StringBuilder();
+        StringBuilder right = new StringBuilder();
+
+        for (int line = 0; line < 200; line++) {
+            left.append("aaaaaaaaaa\n");
+            right.append(line % 3 == 0 ? "abaaaaabba\n" : "aaaaaaaaaa\n");
+        }
+
+        try {
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream(left.toString().getBytes()), true);
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream(right.toString().getBytes()), false);
+
+            List<String> paged = new ArrayList<>();
+            String cursor = null;
+
+            do {
+                DiffResponseDTO page = service.makeDiff(diffObject, DiffQuery.of(null, null, 7, cursor));
+
+                assertTrue("Diff successfully calculated".equals(page.getMessage()));
+                assertTrue(page.getLines().size() <= 7);
+                assertTrue(page.isTruncated() == (page.getNextCursor() != null));
+
+                page.getLines().forEach(line -> paged.add(line.toString()));
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+
+            DiffResponseDTO range = service.makeDiff(diffObject, DiffQuery.of(100l, 150l, null, null));
+            DiffResponseDTO full = service.makeDiff(diffObject);
+
+            assertTrue(full.getLines().size() == 134);
+            assertTrue(full.getLines().stream().map(LineDTO::toString).collect(Collectors.toList()).equals(paged));
+            assertTrue(full.getLines().stream().filter(line -> line.getLine() >= 100 && line.getLine() <= 150)
+                    .map(LineDTO::toString).collect(Collectors.toList())
+                    .equals(range.getLines().stream().map(LineDTO::toString).collect(Collectors.toList())));
+            assertTrue(range.getNextCursor() == null);
+
+            // Once memoized, pages are taken from the result.
+            DiffResponseDTO memoizedPage = service.makeDiff(diffObject, DiffQuery.of(null, null, 7, "102:2"));
+
+            assertTrue(memoizedPage.getLines().get(0).getLine() == 102);
+            assertTrue(memoizedPage.getLines().get(0).getOffset() == 7);
+            assertTrue(memoizedPage.getNextCursor() != null);
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testSummarizeStopsAtFirstDifference() throws Exception {
+        DiffObject diffObject = new DiffObject(1l);
+
+        try {
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaa\naaaa\naaaa".getBytes()), true);
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaa\nabba\naaab".getBytes()), false);
+
+            DiffSummaryDTO summary = underTest.summarize(diffObject);
+
+            assertTrue(!summary.isEqual());
+            assertTrue("Diff successfully calculated".equals(summary.getMessage()));
+            assertTrue(summary.getFirstDifference().toString().equals(new LineDTO(1l, 1l, 2l).toString()));
+
+            // The memoized result gives the same answer.
+            underTest.makeDiff(diffObject);
+
+            assertTrue(summary.toString().equals(underTest.summarize(diffObject).toString()));
+
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaa\naaaa\naaaa".getBytes()), false);
+
+            summary = underTest.summarize(diffObject);
+
+            assertTrue(summary.isEqual());
+            assertTrue(summary.getFirstDifference() == null);
+
+            underTest.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaa".getBytes()), false);
+
+            summary = underTest.summarize(diffObject);
+
+            assertTrue(!summary.isEqual());
+            assertTrue("Data is NOT the same size".equals(summary.getMessage()));
+        } finally {
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
+        }
+    }
+
+    @Test
+    public void testDiffsBeyondMaxWeightAreEvictedAndReleased() throws Exception {
+        DiffProperties smallCache = new DiffProperties();
+        smallCache.getStore().setHeapMaxSize(16);
+        smallCache.getStore().setOffHeapMaxSize(32);
+        smallCache.getCache().setMaxWeight(100);
+
+        PartReaper smallCacheReaper = new PartReaper(smallCache);
+        DiffService service = new DiffService(smallCache, smallCacheReaper);
+        DiffObject first = new DiffObject(1l);
+        DiffObject second = new DiffObject(2l);
+
+        try {
+            URI firstPartURI = service.addNewRawDiff(first, new ByteArrayInputStream(new byte[60]), true);
+
+            assertTrue(service.getDiffById(1l) == first);
+
+            service.addNewRawDiff(second, new ByteArrayInputStream(new byte[60]), true);
+
+            assertTrue(service.getDiffById(1l) == null);
+            assertTrue(service.getDiffById(2l) == second);
+
+            smallCacheReaper.flush();
+
+            assertTrue(!Files.exists(Paths.get(firstPartURI)));
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "releaseParts", first);
+            ReflectionTestUtils.invokeMethod(service, "releaseParts", second);
+        }
+    }
+
+    @Test
+    public void testDurableDiffsAreRecoveredOnRestart() throws Exception {
+        Path dataDirectory = Files.createTempDirectory("data");
+
+        try {
+            DiffProperties durable = new DiffProperties();
+            durable.getStore().setDurable(true);
+            durable.getStore().setDataDirectory(dataDirectory.toString());
+
+            DiffObject diffObject = new DiffObject(1l);
+            DiffService service = new DiffService(durable);
+
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("aaaaaa".getBytes()), true);
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("aaabaa".getBytes()), false);
+
+            DiffResponseDTO expected = service.makeDiff(diffObject);
+
+            // A new service over the same directory plays the restart.
+            DiffService restarted = new DiffService(durable);
+            DiffObject recovered = restarted.getDiffById(1l);
+
+            assertTrue(recovered != null);
+            assertTrue(recovered.getLeftMetadata().get().sameContentAs(diffObject.getLeftMetadata().get()));
+            assertTrue(recovered.getRightMetadata().get().sameContentAs(diffObject.getRightMetadata().get()));
+
+            DiffResponseDTO diffResult = restarted.makeDiff(recovered);
+
+            assertTrue(expected.getMessage().equals(diffResult.getMessage()));
+            assertTrue(expected.getLines().toString().equals(diffResult.getLines().toString()));
+        } finally {
+            FileSystemUtils.deleteRecursively(dataDirectory.toFile());
+        }
+    }
+
+    @Test
+    public void testDiffUploadedAgainAfterExpiringIsRecoveredOnRestart() throws Exception {
+        Path dataDirectory = Files.createTempDirectory("data");
+
+        try {
+            DiffProperties durable = new DiffProperties();
+            durable.getStore().setDurable(true);
+            durable.getStore().setDataDirectory(dataDirectory.toString());
+            durable.getCache().setExpireAfterAccess(1);
+
+            DiffService service = new DiffService(durable);
+
+            service.addNewRawDiff(new DiffObject(1l), new ByteArrayInputStream("aaaaaa".getBytes()), true);
+
+            Thread.sleep(1500);
+
+            // The expired diff is evicted once the new one is put, so its
+            // removal is recorded after the new left part.
+            DiffObject diffObject = new DiffObject(1l);
+
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("bbbbbb".getBytes()), true);
+            service.addNewRawDiff(diffObject, new ByteArrayInputStream("bbbcbb".getBytes()), false);
+
+            DiffService restarted = new DiffService(durable);
+            DiffObject recovered = restarted.getDiffById(1l);
+
+            assertTrue(recovered != null);
+            assertTrue(recovered.getLeftMetadata().get().sameContentAs(diffObject.getLeftMetadata().get()));
+            assertTrue(recovered.getRightMetadata().get().sameContentAs(diffObject.getRightMetadata().get()));
+            assertTrue(Files.exists(Paths.get(recovered.getLeftPart().get().getUri())));
+        } finally {
+            FileSystemUtils.deleteRecursively(dataDirectory.toFile());
         }
     }
 
@@ -333,10 +1017,10 @@ public class DiffServiceTest {
             Files.write(tempRightPath, rightContent, StandardOpenOption.CREATE);
 
             DiffObject diffObject = new DiffObject(1l);
-            diffObject.setLeftPart(Optional.of(tempLeftPath));
-            diffObject.setRightPart(Optional.of(tempRightPath));
+            diffObject.setLeftPart(Optional.of(new FilePart(tempLeftPath)));
+            diffObject.setRightPart(Optional.of(new FilePart(tempRightPath)));
 
-            ReflectionTestUtils.invokeMethod(underTest, "deletePartFiles", diffObject);
+            ReflectionTestUtils.invokeMethod(underTest, "releaseParts", diffObject);
 
             assertTrue(Files.notExists(tempLeftPath, LinkOption.NOFOLLOW_LINKS));
             assertTrue(Files.notExists(tempRightPath, LinkOption.NOFOLLOW_LINKS));
@@ -352,4 +1036,13 @@ public class DiffServiceTest {
             }
         }
     }
+
+    private static String contentOf(Part part) throws IOException {
+        try (PartReader reader = part.open()) {
+            ByteBuffer buffer = reader.map(0, (int) reader.size());
+            byte[] content = new byte[buffer.remaining()];
+            buffer.get(content);
+            return new String(content);
+        }
+    }
 }
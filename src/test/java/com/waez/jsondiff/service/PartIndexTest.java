@@ -0,0 +1,106 @@
+package com.waez.jsondiff.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import com.waez.jsondiff.model.DiffObject;
+import com.waez.jsondiff.model.PartMetadata;
+import com.waez.jsondiff.store.FilePart;
+
+public class PartIndexTest {
+    private Path dataDirectory;
+    private Path partsDirectory;
+    private Path indexFile;
+
+    @Before
+    public void setup() throws IOException {
+        dataDirectory = Files.createTempDirectory("data");
+        partsDirectory = Files.createDirectories(dataDirectory.resolve("parts"));
+        indexFile = dataDirectory.resolve("index");
+    }
+
+    @After
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(dataDirectory.toFile());
+    }
+
+    @Test
+    public void testRecoverRebuildsTheLastPartOfEachSide() throws IOException {
+        try (PartIndex underTest = new PartIndex(indexFile, partsDirectory)) {
+            assertTrue(underTest.recover(0).isEmpty());
+
+            underTest.put(1l, true, part("first", "aaaa"), metadata(4, 1));
+            underTest.put(1l, true, part("second", "aaaaaa"), metadata(6, 2));
+            underTest.put(1l, false, part("third", "bbbbbb"), metadata(6, 3));
+            FilePart fourth = part("fourth", "cc");
+            underTest.put(2l, true, fourth, metadata(2, 4));
+            underTest.remove(2l, Collections.singletonList(fourth));
+        }
+
+        try (PartIndex underTest = new PartIndex(indexFile, partsDirectory)) {
+            Map<Long, DiffObject> recovered = underTest.recover(0);
+
+            assertEquals(1, recovered.size());
+
+            DiffObject diffObject = recovered.get(1l);
+
+            assertTrue(diffObject.getLeftPart().get().getUri().equals(partsDirectory.resolve("second").toUri()));
+            assertTrue(diffObject.getRightPart().get().getUri().equals(partsDirectory.resolve("third").toUri()));
+            assertTrue(diffObject.getLeftMetadata().get().sameContentAs(metadata(6, 2)));
+            assertTrue(diffObject.getRightMetadata().get().sameContentAs(metadata(6, 3)));
+
+            // Files no record points to anymore are deleted.
+            assertTrue(!Files.exists(partsDirectory.resolve("first")));
+            assertTrue(!Files.exists(partsDirectory.resolve("fourth")));
+
+            // The index is compacted to the live records.
+            assertEquals(2, Files.readAllLines(indexFile).size());
+        }
+    }
+
+    @Test
+    public void testRecoverSkipsExpiredAndTruncatedParts() throws IOException {
+        try (PartIndex underTest = new PartIndex(indexFile, partsDirectory)) {
+            underTest.recover(0);
+
+            underTest.put(1l, true, part("first", "aaaa"), metadata(4, 1));
+            underTest.put(2l, true, part("second", "aa"), metadata(4, 2));
+        }
+
+        // A record cut in half by a crash is skipped.
+        Files.write(indexFile, "PUT\t12".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (PartIndex underTest = new PartIndex(indexFile, partsDirectory)) {
+            Map<Long, DiffObject> recovered = underTest.recover(0);
+
+            assertEquals(1, recovered.size());
+            assertTrue(recovered.containsKey(1l));
+        }
+
+        try (PartIndex underTest = new PartIndex(indexFile, partsDirectory)) {
+            assertTrue(underTest.recover(Long.MAX_VALUE).isEmpty());
+            assertTrue(!Files.exists(partsDirectory.resolve("first")));
+        }
+    }
+
+    private FilePart part(String name, String content) throws IOException {
+        return new FilePart(Files.write(partsDirectory.resolve(name), content.getBytes()));
+    }
+
+    private static PartMetadata metadata(long length, int digest) {
+        return new PartMetadata(length, new byte[] { (byte) digest });
+    }
+}
@@ -0,0 +1,103 @@
+package com.waez.jsondiff.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.waez.jsondiff.config.DiffProperties;
+import com.waez.jsondiff.store.FilePart;
+import com.waez.jsondiff.store.Part;
+import com.waez.jsondiff.store.PartReader;
+
+public class PartReaperTest {
+
+    @Test
+    public void testPartsAreReleasedInTheBackground() throws Exception {
+        DiffProperties properties = new DiffProperties();
+        properties.getReaper().setInterval(10);
+
+        PartReaper underTest = new PartReaper(properties);
+        Path tempPath = Files.createTempFile("tempLeftFile", ".tmp");
+
+        try {
+            underTest.reclaim(new FilePart(tempPath));
+
+            for (int i = 0; i < 500 && underTest.getReleased() == 0; i++) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1, underTest.getReleased());
+            assertEquals(0, underTest.getBacklog());
+            assertTrue(!Files.exists(tempPath));
+        } finally {
+            Files.deleteIfExists(tempPath);
+            underTest.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedReleasesAreRetried() {
+        DiffProperties properties = new DiffProperties();
+        properties.getReaper().setInterval(60 * 1000);
+        properties.getReaper().setMaxAttempts(3);
+
+        PartReaper underTest = new PartReaper(properties);
+
+        FailingPart recovers = new FailingPart(2);
+        FailingPart neverRecovers = new FailingPart(Integer.MAX_VALUE);
+
+        underTest.reclaim(recovers);
+        underTest.reclaim(neverRecovers);
+        underTest.flush();
+
+        assertEquals(3, recovers.attempts.get());
+        assertEquals(3, neverRecovers.attempts.get());
+        assertEquals(1, underTest.getReleased());
+        assertEquals(4, underTest.getRetried());
+        assertEquals(1, underTest.getFailed());
+        assertEquals(0, underTest.getBacklog());
+
+        underTest.shutdown();
+    }
+
+    /**
+     * Part whose release fails the given amount of times before working.
+     */
+    private static class FailingPart implements Part {
+        private final int failures;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        FailingPart(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public long getLength() {
+            return 0;
+        }
+
+        @Override
+        public URI getUri() {
+            return URI.create("test:failing");
+        }
+
+        @Override
+        public PartReader open() throws IOException {
+            throw new IOException("Not readable");
+        }
+
+        @Override
+        public void release() throws IOException {
+            if (attempts.incrementAndGet() <= failures) {
+                throw new IOException("Release failed");
+            }
+        }
+    }
+}
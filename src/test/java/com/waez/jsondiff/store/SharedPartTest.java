@@ -0,0 +1,71 @@
+package com.waez.jsondiff.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedPartTest {
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.write(Files.createTempFile("part", ".tmp"), "aaaaaaaaaa".getBytes());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testPartIsKeptWhileAReaderIsOpen() throws IOException {
+        Part underTest = new SharedPart(new FilePart(file));
+
+        try (PartReader reader = underTest.open()) {
+            underTest.release();
+            underTest.release();
+
+            assertTrue(Files.exists(file));
+
+            ByteBuffer content = ByteBuffer.allocate(10);
+            reader.read(content, 0);
+
+            assertEquals("aaaaaaaaaa", new String(content.array()));
+        }
+
+        assertTrue(!Files.exists(file));
+    }
+
+    @Test
+    public void testReleasedPartCantBeOpened() throws IOException {
+        Part underTest = new SharedPart(new FilePart(file));
+
+        underTest.release();
+
+        assertTrue(!Files.exists(file));
+
+        try {
+            underTest.open();
+            fail("PartReleasedException expected");
+        } catch (PartReleasedException e) {
+            assertTrue(e.getMessage().contains("released"));
+        }
+    }
+
+    @Test
+    public void testSharedPartsOfTheSameFileAreTheSame() throws IOException {
+        Part underTest = new SharedPart(new FilePart(file));
+
+        assertTrue(underTest.isSameAs(new SharedPart(new FilePart(file))));
+        assertTrue(underTest.isSameAs(new FilePart(file)));
+    }
+}
@@ -0,0 +1,148 @@
+package com.waez.jsondiff.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+public class SlabPartStoreTest {
+
+    @Test
+    public void testPartGrowsThroughSizeClasses() throws IOException {
+        SlabAllocator allocator = new SlabAllocator(8, 64, 1024);
+        PartStore underTest = new SlabPartStore(64, allocator);
+
+        Part part = write(underTest, "aaaaaaaaaaaaaaaaaaaa");
+
+        assertEquals("offheap", part.getUri().getScheme());
+        assertEquals("aaaaaaaaaaaaaaaaaaaa", contentOf(part));
+
+        // The 8 and 16 bytes slabs used while growing are back in the pool.
+        assertEquals(8 + 16 + 32, allocator.getAllocated());
+        assertEquals(8 + 16, allocator.getFree());
+    }
+
+    @Test
+    public void testReleasedSlabIsReused() throws IOException {
+        SlabAllocator allocator = new SlabAllocator(16, 64, 1024);
+        PartStore underTest = new SlabPartStore(64, allocator);
+
+        write(underTest, "aaaaaaaaaa").release();
+
+        Part part = write(underTest, "bbbbbbbbbbbb");
+
+        assertEquals(16, allocator.getAllocated());
+        assertEquals(0, allocator.getFree());
+        assertEquals("bbbbbbbbbbbb", contentOf(part));
+    }
+
+    @Test
+    public void testSlabIsKeptWhileAReaderIsOpen() throws IOException {
+        SlabAllocator allocator = new SlabAllocator(16, 64, 1024);
+        PartStore underTest = new SlabPartStore(64, allocator);
+
+        Part part = write(underTest, "aaaaaaaaaa");
+
+        try (PartReader reader = part.open()) {
+            part.release();
+            part.release();
+
+            assertEquals(0, allocator.getFree());
+
+            // A new part can't take the slab while it is being read.
+            write(underTest, "bbbbbbbbbb");
+
+            assertEquals("aaaaaaaaaa", new String(toArray(reader.map(0, 10))));
+        }
+
+        assertEquals(16, allocator.getFree());
+
+        try {
+            part.open();
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("released"));
+        }
+    }
+
+    @Test
+    public void testBudgetExhaustedFailsWithoutLosingContent() throws IOException {
+        SlabAllocator allocator = new SlabAllocator(16, 64, 48);
+        PartStore underTest = new SlabPartStore(64, allocator);
+
+        write(underTest, "aaaaaaaaaaaaaaaaaaaa");
+
+        try (PartOutput output = underTest.create()) {
+            output.write(ByteBuffer.wrap("bbbbbbbbbb".getBytes()));
+
+            try {
+                output.write(ByteBuffer.wrap("bbbbbbbbbb".getBytes()));
+                fail("PartStoreFullException expected");
+            } catch (PartStoreFullException e) {
+                assertEquals(10, output.size());
+                assertEquals("bbbbbbbbbb", contentOf(output.commit()));
+            }
+        }
+    }
+
+    @Test
+    public void testFreeSlabsAreDroppedToMakeRoom() throws IOException {
+        SlabAllocator allocator = new SlabAllocator(16, 64, 64);
+        PartStore underTest = new SlabPartStore(64, allocator);
+
+        write(underTest, "aaaaaaaaaa").release();
+        write(underTest, "aaaaaaaaaaaaaaaaaaaa").release();
+
+        assertEquals(48, allocator.getFree());
+
+        try (PartOutput output = underTest.create()) {
+            output.write(ByteBuffer.wrap(new byte[44]));
+
+            assertEquals(44, output.commit().getLength());
+        }
+
+        assertEquals(64, allocator.getAllocated());
+        assertEquals(0, allocator.getFree());
+    }
+
+    @Test
+    public void testClosingWithoutCommitGivesTheSlabBack() throws IOException {
+        SlabAllocator allocator = new SlabAllocator(16, 64, 1024);
+        PartStore underTest = new SlabPartStore(64, allocator);
+
+        try (PartOutput output = underTest.create()) {
+            output.transferFrom(Channels.newChannel(new ByteArrayInputStream(new byte[10])), 100);
+        }
+
+        assertEquals(16, allocator.getFree());
+    }
+
+    private static Part write(PartStore store, String content) throws IOException {
+        try (PartOutput output = store.create()) {
+            // Written in small chunks, to make it grow.
+            for (int i = 0; i < content.length(); i += 3) {
+                output.write(ByteBuffer.wrap(content.getBytes(), i, Math.min(3, content.length() - i)));
+            }
+
+            return output.commit();
+        }
+    }
+
+    private static String contentOf(Part part) throws IOException {
+        try (PartReader reader = part.open()) {
+            return new String(toArray(reader.map(0, (int) reader.size())));
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        return content;
+    }
+}
@@ -0,0 +1,159 @@
+package com.waez.jsondiff.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+public class TieredPartStoreTest {
+    private Path directory;
+    private PartStore underTest;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("parts");
+        underTest = new TieredPartStore(new MemoryPartStore(8),
+                new SlabPartStore(32, new SlabAllocator(16, 32, 1024)), new FilePartStore(directory));
+    }
+
+    @After
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    @Test
+    public void testSmallPartStaysInHeap() throws IOException {
+        Part part = write("aaaa".getBytes());
+
+        assertEquals("heap", part.getUri().getScheme());
+        assertEquals("aaaa", contentOf(part));
+    }
+
+    @Test
+    public void testPartSpillsOffHeap() throws IOException {
+        Part part = write("aaaaaaaaaaaaaaaa".getBytes());
+
+        assertEquals("offheap", part.getUri().getScheme());
+        assertEquals("aaaaaaaaaaaaaaaa", contentOf(part));
+    }
+
+    @Test
+    public void testPartSpillsToFile() throws IOException {
+        byte[] content = new byte[100];
+
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        Part part = write(content);
+
+        assertEquals("file", part.getUri().getScheme());
+        assertEquals(100, part.getLength());
+        assertEquals(new String(content), contentOf(part));
+
+        part.release();
+
+        assertTrue(!Files.exists(((FilePart) part).getPath()));
+    }
+
+    @Test
+    public void testTransferSpillsAcrossTiers() throws IOException {
+        byte[] content = new byte[50];
+
+        try (PartOutput output = underTest.create()) {
+            assertEquals(50, output.transferFrom(Channels.newChannel(new ByteArrayInputStream(content)), 1000));
+
+            Part part = output.commit();
+
+            assertEquals("file", part.getUri().getScheme());
+            assertEquals(50, part.getLength());
+        }
+    }
+
+    @Test
+    public void testClosingWithoutCommitDiscardsTheFile() throws IOException {
+        try (PartOutput output = underTest.create()) {
+            output.write(ByteBuffer.wrap(new byte[100]));
+        }
+
+        assertEquals(0, directory.toFile().list().length);
+    }
+
+    @Test
+    public void testPartSpillsToFileWhenOffHeapBudgetRunsOut() throws IOException {
+        PartStore store = new TieredPartStore(new MemoryPartStore(8),
+                new SlabPartStore(32, new SlabAllocator(16, 32, 32)), new FilePartStore(directory));
+
+        Part first;
+        Part second;
+
+        try (PartOutput output = store.create()) {
+            output.write(ByteBuffer.wrap("aaaaaaaaaaaaaaaaaaaa".getBytes()));
+            first = output.commit();
+        }
+
+        try (PartOutput output = store.create()) {
+            output.write(ByteBuffer.wrap("bbbbbbbbbbbbbbbbbbbb".getBytes()));
+            second = output.commit();
+        }
+
+        assertEquals("offheap", first.getUri().getScheme());
+        assertEquals("file", second.getUri().getScheme());
+        assertEquals("bbbbbbbbbbbbbbbbbbbb", contentOf(second));
+
+        // Once the first one is released, its slab can be used again.
+        first.release();
+
+        try (PartOutput output = store.create()) {
+            output.write(ByteBuffer.wrap("cccccccccccccccccccc".getBytes()));
+
+            assertEquals("offheap", output.commit().getUri().getScheme());
+        }
+    }
+
+    @Test
+    public void testPartBiggerThanLastTierFails() throws IOException {
+        PartStore store = new TieredPartStore(new MemoryPartStore(8), new MemoryPartStore(16));
+
+        try (PartOutput output = store.create()) {
+            output.write(ByteBuffer.wrap(new byte[20]));
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("16"));
+        }
+    }
+
+    private Part write(byte[] content) throws IOException {
+        try (PartOutput output = underTest.create()) {
+            // Written in small chunks, to make it spill while it grows.
+            for (int i = 0; i < content.length; i += 3) {
+                output.write(ByteBuffer.wrap(content, i, Math.min(3, content.length - i)));
+            }
+
+            return output.commit();
+        }
+    }
+
+    private static String contentOf(Part part) throws IOException {
+        try (PartReader reader = part.open()) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) reader.size());
+
+            while (buffer.hasRemaining() && reader.read(buffer, buffer.position()) > 0) {
+                // Keeps reading until the buffer is full.
+            }
+
+            return new String(buffer.array());
+        }
+    }
+}